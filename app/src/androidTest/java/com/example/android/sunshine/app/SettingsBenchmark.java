@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.test.InstrumentationTestCase;
+import android.test.InstrumentationTestRunner;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+    Times reading the units from the SunshineSettings snapshot against reading them from
+    SharedPreferences the way Utility.isMetric did before the snapshot.  Nothing else is timed:
+    formatting and the SunshineFormatter caches are left out.
+
+    It is not part of the test suite, and does nothing unless the runner is given
+    "-e benchmark true":
+
+    adb shell am instrument -w -e benchmark true \
+        -e class com.example.android.sunshine.app.SettingsBenchmark \
+        com.example.android.sunshine.app.test/android.test.InstrumentationTestRunner
+
+    The median of ROUNDS rounds is written to logcat under the SettingsBenchmark tag.  Nothing
+    is asserted: timings on a shared device are too noisy for that.
+ */
+public class SettingsBenchmark extends InstrumentationTestCase {
+    private static final String LOG_TAG = SettingsBenchmark.class.getSimpleName();
+
+    private static final int WARMUP = 1000;
+    private static final int ITERATIONS = 10000;
+    private static final int ROUNDS = 9;
+
+    // Keeps the reads from being optimized away
+    private int mSink;
+
+    private boolean isEnabled() {
+        Instrumentation instrumentation = getInstrumentation();
+        // Runner arguments are only visible from API 18
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                && instrumentation instanceof InstrumentationTestRunner
+                && "true".equals(((InstrumentationTestRunner) instrumentation).getArguments()
+                        .getString("benchmark"));
+    }
+
+    // Utility.isMetric before the snapshot
+    private static boolean legacyIsMetric(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    public void testUnitsRead() {
+        if (!isEnabled()) {
+            return;
+        }
+        Context context = getInstrumentation().getTargetContext();
+        SunshineSettings.get(context);
+
+        for (int i = 0; i < WARMUP; i++) {
+            if (legacyIsMetric(context)) {
+                mSink++;
+            }
+            if (SunshineSettings.get(context).metric) {
+                mSink++;
+            }
+        }
+
+        long[] legacyNanos = new long[ROUNDS];
+        long[] snapshotNanos = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (legacyIsMetric(context)) {
+                    mSink++;
+                }
+            }
+            legacyNanos[round] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (SunshineSettings.get(context).metric) {
+                    mSink++;
+                }
+            }
+            snapshotNanos[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(legacyNanos);
+        Arrays.sort(snapshotNanos);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Units read, median of %d rounds: SharedPreferences %.1f ns/call, "
+                        + "snapshot %.1f ns/call (%d)", ROUNDS,
+                (double) legacyNanos[ROUNDS / 2] / ITERATIONS,
+                (double) snapshotNanos[ROUNDS / 2] / ITERATIONS, mSink));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.art.BitmapCache;
+
+/*
+    Checks that BitmapCache decodes drawables to fit the size asked for, and hands out the same
+    bitmap for the same request.
+ */
+public class TestBitmapCache extends AndroidTestCase {
+
+    public void testDecodesToFit() {
+        Bitmap bitmap = BitmapCache.get(mContext).getBitmap(R.drawable.art_storm, 48, 32);
+        assertNotNull("Error: art_storm could not be decoded", bitmap);
+        assertTrue("Error: bitmap is wider than requested", bitmap.getWidth() <= 48);
+        assertTrue("Error: bitmap is taller than requested", bitmap.getHeight() <= 32);
+        assertTrue("Error: bitmap should fill one of the requested dimensions",
+                bitmap.getWidth() == 48 || bitmap.getHeight() == 32);
+    }
+
+    public void testCachedPerRequest() {
+        BitmapCache cache = BitmapCache.get(mContext);
+        Bitmap first = cache.getBitmap(R.drawable.art_rain, 64, 64);
+        assertSame("Error: the same request should be served from the cache",
+                first, cache.getBitmap(R.drawable.art_rain, 64, 64));
+        assertNotSame("Error: a different size should be decoded separately",
+                first, cache.getBitmap(R.drawable.art_rain, 32, 32));
+        assertNotSame("Error: a different config should be decoded separately",
+                first, cache.getBitmap(R.drawable.art_rain, 64, 64, Bitmap.Config.RGB_565));
+        assertNotSame("Error: a different drawable should be decoded separately",
+                first, cache.getBitmap(R.drawable.art_snow, 64, 64));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+
+/*
+    Simulates scrolling the forecast list by binding every row over and over, and counts what
+    gets allocated while doing it.  Binding only copies prepared ForecastItem fields into views,
+    so the count should stay small and must not grow with the amount of formatting a row needs.
+ */
+public class TestForecastAdapter extends AndroidTestCase {
+    private static final String LOG_TAG = TestForecastAdapter.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 14;
+    private static final int SCROLL_PASSES = 50;
+
+    // Allowance per bind for what the framework allocates inside setImageResource and
+    // TextView.setText.  Formatting a row from a Cursor, as we used to, costs several times this.
+    private static final int MAX_ALLOCATIONS_PER_BIND = 12;
+
+    private ForecastAdapter mAdapter;
+    private ForecastAdapter.ForecastAdapterViewHolder mTodayHolder;
+    private ForecastAdapter.ForecastAdapterViewHolder mFutureHolder;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ContextThemeWrapper context = new ContextThemeWrapper(mContext, R.style.AppTheme);
+
+        int today = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
+        ForecastItem[] items = new ForecastItem[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            // Local graphics, so Glide stays out of the measurement
+            items[i] = new ForecastItem(context, i + 1,
+                    SunshineDateUtils.getStartOfJulianDay(today + i), 800 + (i % 5),
+                    20 + i, 10 - i, true);
+        }
+
+        mAdapter = new ForecastAdapter(context, new ForecastAdapter.ForecastAdapterOnClickHandler() {
+            @Override
+            public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+            }
+        }, new View(context), AbsListView.CHOICE_MODE_NONE);
+        mAdapter.swapForecast(new ForecastLoader.Result(items, false, 0, 0));
+
+        RecyclerView recyclerView = new RecyclerView(context);
+        mTodayHolder = mAdapter.onCreateViewHolder(recyclerView, mAdapter.getItemViewType(0));
+        mFutureHolder = mAdapter.onCreateViewHolder(recyclerView, mAdapter.getItemViewType(1));
+    }
+
+    private void scrollOnce() {
+        int count = mAdapter.getItemCount();
+        mAdapter.onBindViewHolder(mTodayHolder, 0);
+        for (int position = 1; position < count; position++) {
+            mAdapter.onBindViewHolder(mFutureHolder, position);
+        }
+    }
+
+    public void testScrollingAllocations() {
+        // Warm up the drawable and text caches so we only count the steady state
+        scrollOnce();
+        scrollOnce();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int pass = 0; pass < SCROLL_PASSES; pass++) {
+            scrollOnce();
+        }
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        int binds = SCROLL_PASSES * mAdapter.getItemCount();
+        Log.d(LOG_TAG, allocations + " allocations over " + binds + " binds");
+        assertTrue("Error: binding allocated " + allocations + " objects over " + binds +
+                        " binds, expected at most " + MAX_ALLOCATIONS_PER_BIND + " per bind",
+                allocations <= binds * MAX_ALLOCATIONS_PER_BIND);
+    }
+}
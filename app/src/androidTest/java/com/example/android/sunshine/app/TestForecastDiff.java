@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+
+/*
+    Checks the updates ForecastDiff produces, and that ForecastAdapter only forwards those
+    updates when it is still showing the list the diff was computed against.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private int mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mToday = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
+    }
+
+    private ForecastItem[] buildItems(int firstDay, int days, double high) {
+        ForecastItem[] items = new ForecastItem[days];
+        for (int i = 0; i < days; i++) {
+            // Row ids change on every sync, so make sure they differ between lists
+            items[i] = new ForecastItem(mContext, (long) (high * 100) + i,
+                    SunshineDateUtils.getStartOfJulianDay(firstDay + i), 800,
+                    high, high - 10, true);
+        }
+        return items;
+    }
+
+    public void testUnchangedForecast() {
+        int[] updates = ForecastDiff.compute(buildItems(mToday, 14, 20), buildItems(mToday, 14, 20));
+        assertEquals("Error: an unchanged forecast produced updates", 0, updates.length);
+    }
+
+    public void testChangedDay() {
+        ForecastItem[] oldItems = buildItems(mToday, 14, 20);
+        ForecastItem[] newItems = buildItems(mToday, 14, 20);
+        newItems[3] = buildItems(mToday + 3, 1, 25)[0];
+
+        int[] updates = ForecastDiff.compute(oldItems, newItems);
+        assertEquals("Error: expected a single update", 3, updates.length);
+        assertEquals(ForecastDiff.CHANGE, updates[0]);
+        assertEquals(3, updates[1]);
+        assertEquals(1, updates[2]);
+    }
+
+    public void testDayRollsOver() {
+        // Yesterday drops off the top and a new day arrives at the bottom.  The new first
+        // row also has to be rebound, since it now uses the today layout.
+        int[] updates = ForecastDiff.compute(buildItems(mToday - 1, 14, 20),
+                buildItems(mToday, 14, 20));
+        assertEquals("Error: expected remove, insert and change", 9, updates.length);
+        assertEquals(ForecastDiff.REMOVE, updates[0]);
+        assertEquals(0, updates[1]);
+        assertEquals(1, updates[2]);
+        assertEquals(ForecastDiff.INSERT, updates[3]);
+        assertEquals(13, updates[4]);
+        assertEquals(1, updates[5]);
+        assertEquals(ForecastDiff.CHANGE, updates[6]);
+        assertEquals(0, updates[7]);
+        assertEquals(1, updates[8]);
+    }
+
+    public void testRangesAreCoalesced() {
+        int[] updates = ForecastDiff.compute(buildItems(mToday, 3, 20), buildItems(mToday, 14, 20));
+        assertEquals("Error: expected a single insert range", 3, updates.length);
+        assertEquals(ForecastDiff.INSERT, updates[0]);
+        assertEquals(3, updates[1]);
+        assertEquals(11, updates[2]);
+    }
+
+    public void testAdapterDispatch() {
+        ForecastAdapter adapter = new ForecastAdapter(mContext,
+                new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                    @Override
+                    public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+                    }
+                }, new View(mContext), AbsListView.CHOICE_MODE_SINGLE);
+
+        final int[] events = new int[2];  // full refreshes, range events
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                events[0]++;
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                events[1]++;
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                events[1]++;
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                events[1]++;
+            }
+        });
+
+        ForecastItem[] first = buildItems(mToday, 14, 20);
+        adapter.swapForecast(new ForecastLoader.Result(first, false, 0, 0));
+        assertEquals("Error: the first load should refresh everything", 1, events[0]);
+
+        ForecastItem[] second = buildItems(mToday, 14, 20);
+        adapter.swapForecast(new ForecastLoader.Result(second, false, 0, 0, first,
+                ForecastDiff.compute(first, second)));
+        assertEquals("Error: an unchanged sync should not refresh the list", 1, events[0]);
+        assertEquals("Error: an unchanged sync should not send range events", 0, events[1]);
+        assertEquals("Error: stable ids should follow the date",
+                second[5].date, adapter.getItemId(5));
+
+        // A diff against a list the adapter no longer shows must not be trusted
+        ForecastItem[] third = buildItems(mToday, 14, 25);
+        adapter.swapForecast(new ForecastLoader.Result(third, false, 0, 0, first,
+                ForecastDiff.compute(first, third)));
+        assertEquals("Error: a stale diff should fall back to a full refresh", 2, events[0]);
+        assertEquals(0, events[1]);
+    }
+}
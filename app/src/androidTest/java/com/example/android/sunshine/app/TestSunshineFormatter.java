@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/*
+    Checks that the cached formatter produces exactly what formatting every call from scratch
+    used to, and that it follows locale changes.
+ */
+public class TestSunshineFormatter extends AndroidTestCase {
+
+    private Locale mDefaultLocale;
+    private int mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultLocale = Locale.getDefault();
+        mToday = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mDefaultLocale);
+        SunshineFormatter.invalidate();
+        super.tearDown();
+    }
+
+    private String legacyFormatTemperature(double temperature) {
+        if (!Utility.isMetric(mContext)) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(mContext.getString(R.string.format_temperature), temperature);
+    }
+
+    private String legacyFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        int julianDay = SunshineDateUtils.getJulianDay(dateInMillis);
+        if (displayLongToday && julianDay == mToday) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today),
+                    new SimpleDateFormat("MMMM dd").format(dateInMillis));
+        } else if (julianDay == mToday) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == mToday + 1) {
+            return mContext.getString(R.string.tomorrow);
+        } else if (julianDay < mToday + 7) {
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        } else {
+            return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+        }
+    }
+
+    public void testTemperaturesMatch() {
+        for (int tenths = -600; tenths <= 600; tenths++) {
+            double temperature = tenths / 10.0;
+            assertEquals("Error: temperature " + temperature + " formatted differently",
+                    legacyFormatTemperature(temperature),
+                    Utility.formatTemperature(mContext, temperature));
+        }
+        assertSame("Error: temperature was not cached",
+                Utility.formatTemperature(mContext, 21.2), Utility.formatTemperature(mContext, 20.9));
+    }
+
+    public void testDayLabelsMatch() {
+        for (int day = mToday - 1; day < mToday + 14; day++) {
+            // Label from the middle of the day; any time on the same day must give the same label
+            long date = SunshineDateUtils.getStartOfJulianDay(day) + 13 * SunshineDateUtils.HOUR_IN_MILLIS;
+            assertEquals("Error: friendly day differs on day " + day,
+                    legacyFriendlyDayString(date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals("Error: long friendly day differs on day " + day,
+                    legacyFriendlyDayString(date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals("Error: cached label differs within day " + day,
+                    Utility.getFriendlyDayString(mContext, date, false),
+                    Utility.getFriendlyDayString(mContext,
+                            SunshineDateUtils.getStartOfJulianDay(day), false));
+        }
+    }
+
+    public void testLocaleChange() {
+        long nextWeek = SunshineDateUtils.getStartOfJulianDay(mToday + 10);
+
+        Locale.setDefault(Locale.US);
+        String english = Utility.getFriendlyDayString(mContext, nextWeek, false);
+        assertEquals("Error: label formatted incorrectly for Locale.US",
+                new SimpleDateFormat("EEE MMM dd").format(nextWeek), english);
+
+        // Even without the broadcast, a new default locale must not be served stale labels
+        Locale.setDefault(Locale.FRANCE);
+        String french = Utility.getFriendlyDayString(mContext, nextWeek, false);
+        assertEquals("Error: label did not follow the locale change",
+                new SimpleDateFormat("EEE MMM dd").format(nextWeek), french);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the settings snapshot follows preference changes.  SettingsBenchmark times it
+    against reading SharedPreferences.
+ */
+public class TestSunshineSettings extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mOriginalUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mOriginalUnits = mPrefs.getString(mContext.getString(R.string.pref_units_key), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mOriginalUnits == null) {
+            editor.remove(mContext.getString(R.string.pref_units_key));
+        } else {
+            editor.putString(mContext.getString(R.string.pref_units_key), mOriginalUnits);
+        }
+        editor.commit();
+        super.tearDown();
+    }
+
+    private void setUnits(final int unitsId) {
+        final boolean metric = unitsId == R.string.pref_units_metric;
+        // Make sure the snapshot exists, and so is listening, before we change anything
+        SunshineSettings.get(mContext);
+        mPrefs.edit().putString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(unitsId)).commit();
+
+        // Off the main thread, SharedPreferences posts the change to the main looper
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return SunshineSettings.get(mContext).metric == metric;
+            }
+        }.run();
+    }
+
+    public void testSnapshotFollowsPreferences() {
+        setUnits(R.string.pref_units_imperial);
+        assertFalse("Error: snapshot did not pick up imperial units", Utility.isMetric(mContext));
+        assertEquals("Error: imperial temperature formatted incorrectly",
+                String.format(mContext.getString(R.string.format_temperature), 50.0),
+                Utility.formatTemperature(mContext, 10));
+
+        setUnits(R.string.pref_units_metric);
+        assertTrue("Error: snapshot did not pick up metric units", Utility.isMetric(mContext));
+
+        SunshineSettings before = SunshineSettings.get(mContext);
+        mPrefs.edit().putLong(mContext.getString(R.string.pref_last_notification),
+                System.currentTimeMillis()).commit();
+        assertSame("Error: app-written values should not rebuild the snapshot",
+                before, SunshineSettings.get(mContext));
+    }
+}
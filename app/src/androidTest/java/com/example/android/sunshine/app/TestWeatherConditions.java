@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.art.WeatherArt;
+import com.example.android.sunshine.common.WeatherConditions;
+
+import java.util.Locale;
+
+/*
+    Checks the table-driven weather condition lookups against the mapping the if chains used to
+    spell out.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public void testEveryCodeIsConsistent() {
+        for (int weatherId = -1; weatherId <= 1000; weatherId++) {
+            boolean hasIcon = Utility.getIconResourceForWeatherCondition(weatherId) != -1;
+            assertEquals("Error: icon and art disagree for " + weatherId,
+                    hasIcon, Utility.getArtResourceForWeatherCondition(weatherId) != -1);
+            assertEquals("Error: icon and art URL disagree for " + weatherId,
+                    hasIcon, Utility.getArtUrlForWeatherCondition(mContext, weatherId) != null);
+            assertEquals("Error: icon and image URL disagree for " + weatherId,
+                    hasIcon, Utility.getImageUrlForWeatherCondition(weatherId) != null);
+        }
+    }
+
+    public void testMapping() {
+        assertEquals(R.drawable.ic_storm, Utility.getIconResourceForWeatherCondition(211));
+        assertEquals(R.drawable.ic_light_rain, Utility.getIconResourceForWeatherCondition(321));
+        assertEquals(R.drawable.ic_snow, Utility.getIconResourceForWeatherCondition(511));
+        assertEquals(R.drawable.ic_rain, Utility.getIconResourceForWeatherCondition(531));
+        assertEquals(R.drawable.ic_cloudy, Utility.getIconResourceForWeatherCondition(804));
+        assertEquals(R.drawable.art_clouds, Utility.getArtResourceForWeatherCondition(803));
+
+        // Dust has always been drawn as fog, and tornadoes as storms with their own photograph
+        assertEquals(R.drawable.ic_fog, Utility.getIconResourceForWeatherCondition(761));
+        assertEquals(R.drawable.art_storm, Utility.getArtResourceForWeatherCondition(781));
+        assertFalse("Error: tornadoes should not share the thunderstorm photograph",
+                Utility.getImageUrlForWeatherCondition(781).equals(
+                        Utility.getImageUrlForWeatherCondition(211)));
+
+        assertEquals("Error: 762 has never had artwork",
+                -1, Utility.getIconResourceForWeatherCondition(762));
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(900));
+
+        String format = SunshineSettings.get(mContext).artPackUrlFormat;
+        assertEquals("Error: art URL formatted incorrectly",
+                String.format(Locale.US, format, "light_clouds"),
+                Utility.getArtUrlForWeatherCondition(mContext, 801));
+    }
+
+    public void testArtModelsAreShared() {
+        // Glide keys its caches and in-flight loads on the model, so every code showing the
+        // same image must hand it the same one
+        assertSame("Error: rain codes should share an art model",
+                Utility.getArtForWeatherCondition(mContext, 500),
+                Utility.getArtForWeatherCondition(mContext, 531));
+        assertEquals("Error: art models for the same image should be equal",
+                new WeatherArt(SunshineSettings.get(mContext).artPackUrlFormat,
+                        WeatherConditions.CLOUDS),
+                Utility.getArtForWeatherCondition(mContext, 802));
+        assertNull(Utility.getArtForWeatherCondition(mContext, 900));
+    }
+
+    public void testDescriptions() {
+        assertEquals(mContext.getString(R.string.condition_2xx),
+                Utility.getStringForWeatherCondition(mContext, 232));
+        assertEquals(mContext.getString(R.string.condition_3xx),
+                Utility.getStringForWeatherCondition(mContext, 300));
+        assertEquals(mContext.getString(R.string.condition_762),
+                Utility.getStringForWeatherCondition(mContext, 762));
+        assertEquals(mContext.getString(R.string.condition_962),
+                Utility.getStringForWeatherCondition(mContext, 962));
+        assertEquals("Error: unknown codes should use the unknown format",
+                mContext.getString(R.string.condition_unknown, 505),
+                Utility.getStringForWeatherCondition(mContext, 505));
+        assertEquals(mContext.getString(R.string.condition_unknown, 5000),
+                Utility.getStringForWeatherCondition(mContext, 5000));
+    }
+}
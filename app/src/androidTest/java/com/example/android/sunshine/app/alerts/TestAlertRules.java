@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.alerts;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Compiles alert rules and checks which forecast rows they match, and that a hit is only
+    notified once.
+ */
+public class TestAlertRules extends AndroidTestCase {
+
+    private static final long LOCATION_ID = 1;
+
+    private int mToday;
+    // Kept apart from the app's own record of notified hits
+    private File mNotifiedFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mToday = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
+        mNotifiedFile = new File(mContext.getCacheDir(), "test_alert_hits");
+        WeatherAlerts.clearNotified(mNotifiedFile);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        WeatherAlerts.clearNotified(mNotifiedFile);
+        super.tearDown();
+    }
+
+    // Day i is clear, except day 2 which has a thunderstorm; highs climb 3 degrees a day from
+    // 30 and pressure falls 12 hPa a day from 1020
+    private ForecastBatch createBatch(int days) {
+        ForecastBatch batch = new ForecastBatch();
+        for (int i = 0; i < days; i++) {
+            batch.add(LOCATION_ID, SunshineDateUtils.getStartOfJulianDay(mToday + i),
+                    i == 2 ? 211 : 800, "Clear", i == 3 ? -6 : 0, 30 + 3 * i, 50,
+                    1020 - 12 * i, 4, 0);
+        }
+        return batch;
+    }
+
+    private List<String> evaluate(final AlertRules rules, ForecastBatch batch) {
+        final List<String> hits = new ArrayList<String>();
+        rules.evaluate(batch, mToday, new AlertRules.OnHitListener() {
+            @Override
+            public void onHit(int rule, long locationId, int julianDay) {
+                assertEquals(LOCATION_ID, locationId);
+                hits.add(rules.getRule(rule) + " @" + (julianDay - mToday));
+            }
+        });
+        return hits;
+    }
+
+    public void testCompile() {
+        assertEquals(0, AlertRules.compile(null).size());
+        assertEquals(0, AlertRules.compile(" \n; ").size());
+
+        AlertRules rules = AlertRules.compile(
+                "max > 35\nWeather 2xx within 48h; pressure drop > 10 hPa/day\nnot a rule");
+        assertEquals("Error: rules that don't parse should be left out", 3, rules.size());
+        assertEquals("Error: rules should be kept as written",
+                "Weather 2xx within 48h", rules.getRule(1));
+    }
+
+    public void testEvaluate() {
+        AlertRules rules = AlertRules.compile("max > 35\nmin < -5\u00B0C\nweather 2xx\n"
+                + "pressure drop > 10\nhumidity > 90");
+        assertEquals(Arrays.asList(
+                "pressure drop > 10 @1",
+                "max > 35 @2", "pressure drop > 10 @2", "weather 2xx @2",
+                "max > 35 @3", "min < -5\u00B0C @3", "pressure drop > 10 @3"),
+                evaluate(rules, createBatch(4)));
+    }
+
+    public void testThresholdsAreStrict() {
+        AlertRules rules = AlertRules.compile("max > 33\nmax < 33\nmax > 32.5");
+        List<String> hits = evaluate(rules, createBatch(2));
+        assertFalse("Error: a value equal to the threshold should not match",
+                hits.contains("max > 33 @1"));
+        assertFalse(hits.contains("max < 33 @1"));
+        assertTrue(hits.contains("max > 32.5 @1"));
+        assertTrue(hits.contains("max < 33 @0"));
+    }
+
+    public void testWithin() {
+        AlertRules rules = AlertRules.compile("weather 2xx within 48h\nweather 2xx within 49h");
+        assertEquals("Error: only days starting within the window should match",
+                Arrays.asList("weather 2xx within 49h @2"), evaluate(rules, createBatch(4)));
+    }
+
+    public void testPastDaysIgnored() {
+        ForecastBatch batch = new ForecastBatch();
+        batch.add(LOCATION_ID, SunshineDateUtils.getStartOfJulianDay(mToday - 1), 211, "Storm",
+                0, 40, 50, 1000, 4, 0);
+        assertTrue(evaluate(AlertRules.compile("max > 35\nweather 2xx"), batch).isEmpty());
+    }
+
+    public void testNotifiedOnce() {
+        int day = mToday + 1;
+        String first = WeatherAlerts.key(day, LOCATION_ID, "max > 35");
+        String second = WeatherAlerts.key(day + 1, LOCATION_ID, "max > 35");
+
+        boolean[] fresh = WeatherAlerts.markNotified(mNotifiedFile, mToday,
+                Arrays.asList(first));
+        assertTrue("Error: a new hit should be notified", fresh[0]);
+        fresh = WeatherAlerts.markNotified(mNotifiedFile, mToday, Arrays.asList(first, second));
+        assertFalse("Error: a hit should only be notified once", fresh[0]);
+        assertTrue(fresh[1]);
+
+        // Once the days have passed they are forgotten
+        WeatherAlerts.markNotified(mNotifiedFile, day + 2, new ArrayList<String>());
+        fresh = WeatherAlerts.markNotified(mNotifiedFile, mToday, Arrays.asList(first));
+        assertTrue("Error: hits for passed days should be forgotten", fresh[0]);
+    }
+
+    public void testNotifiedHitsAreSaved() {
+        String hit = WeatherAlerts.key(mToday, LOCATION_ID, "weather 2xx");
+        WeatherAlerts.markNotified(mNotifiedFile, mToday, Arrays.asList(hit));
+
+        // Switching files drops the in-memory copy, so this reads the hit back from the file
+        WeatherAlerts.markNotified(new File(mContext.getCacheDir(), "other_alert_hits"), mToday,
+                new ArrayList<String>());
+        boolean[] fresh = WeatherAlerts.markNotified(mNotifiedFile, mToday, Arrays.asList(hit));
+        assertFalse("Error: notified hits should survive a reload", fresh[0]);
+    }
+}
@@ -230,6 +230,144 @@ public class TestProvider extends AndroidTestCase {
         }
     }
 
+    /*
+        This test inserts a few locations and checks that the nearest and bounding-box queries
+        are answered from the location index, including after a location has moved.
+     */
+    public void testSpatialLocationQueries() {
+        ContentValues northPole = TestUtilities.createNorthPoleLocationValues();
+        long northPoleRowId = ContentUris.parseId(mContext.getContentResolver()
+                .insert(LocationEntry.CONTENT_URI, northPole));
+
+        ContentValues london = new ContentValues();
+        london.put(LocationEntry.COLUMN_LOCATION_SETTING, "London, UK");
+        london.put(LocationEntry.COLUMN_CITY_NAME, "London");
+        london.put(LocationEntry.COLUMN_COORD_LAT, 51.5085);
+        london.put(LocationEntry.COLUMN_COORD_LONG, -0.1257);
+        long londonRowId = ContentUris.parseId(mContext.getContentResolver()
+                .insert(LocationEntry.CONTENT_URI, london));
+
+        ContentValues sydney = new ContentValues();
+        sydney.put(LocationEntry.COLUMN_LOCATION_SETTING, "Sydney, AU");
+        sydney.put(LocationEntry.COLUMN_CITY_NAME, "Sydney");
+        sydney.put(LocationEntry.COLUMN_COORD_LAT, -33.8679);
+        sydney.put(LocationEntry.COLUMN_COORD_LONG, 151.2073);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, sydney);
+
+        // Just outside London should find London first, then the North Pole.
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(51.45, -0.2, 2),
+                new String[]{LocationEntry._ID},
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Nearest query returned the wrong number of rows", 2, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: Nearest query did not return London first", londonRowId, cursor.getLong(0));
+        cursor.moveToNext();
+        assertEquals("Error: Nearest query did not return the North Pole second",
+                northPoleRowId, cursor.getLong(0));
+        cursor.close();
+
+        // A box around Alaska should only contain the North Pole.
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationBoundsUri(60, -150, 70, -140),
+                null,
+                null,
+                null,
+                null
+        );
+        TestUtilities.validateCursor("testSpatialLocationQueries, bounds query", cursor, northPole);
+
+        // Moving London must move its index entry too.
+        ContentValues moved = new ContentValues();
+        moved.put(LocationEntry.COLUMN_COORD_LAT, 64.0);
+        moved.put(LocationEntry.COLUMN_COORD_LONG, -145.0);
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, moved,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(londonRowId)});
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationBoundsUri(60, -150, 70, -140),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Bounds query did not pick up the updated location", 2, cursor.getCount());
+        cursor.close();
+
+        // And deleting it must remove it from the index.
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(londonRowId)});
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationBoundsUri(60, -150, 70, -140),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Bounds query still returns a deleted location", 1, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        This test checks that the nearest query looks across the antimeridian, where longitude
+        jumps from 180 to -180, and that malformed coordinates are rejected.
+     */
+    public void testNearestLocationAcrossAntimeridian() {
+        ContentValues east = new ContentValues();
+        east.put(LocationEntry.COLUMN_LOCATION_SETTING, "Taveuni, FJ");
+        east.put(LocationEntry.COLUMN_CITY_NAME, "Taveuni");
+        east.put(LocationEntry.COLUMN_COORD_LAT, -16.8);
+        east.put(LocationEntry.COLUMN_COORD_LONG, 179.9);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, east);
+
+        ContentValues west = new ContentValues();
+        west.put(LocationEntry.COLUMN_LOCATION_SETTING, "Lau, FJ");
+        west.put(LocationEntry.COLUMN_CITY_NAME, "Lau");
+        west.put(LocationEntry.COLUMN_COORD_LAT, -16.8);
+        west.put(LocationEntry.COLUMN_COORD_LONG, -179.9);
+        long westRowId = ContentUris.parseId(mContext.getContentResolver()
+                .insert(LocationEntry.CONTENT_URI, west));
+
+        // Further away on the map, but only if you go the long way round
+        ContentValues sameSide = new ContentValues();
+        sameSide.put(LocationEntry.COLUMN_LOCATION_SETTING, "Suva, FJ");
+        sameSide.put(LocationEntry.COLUMN_CITY_NAME, "Suva");
+        sameSide.put(LocationEntry.COLUMN_COORD_LAT, -18.1);
+        sameSide.put(LocationEntry.COLUMN_COORD_LONG, 178.4);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, sameSide);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(-16.8, 179.95, 2),
+                new String[]{LocationEntry._ID},
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Nearest query returned the wrong number of rows", 2, cursor.getCount());
+        cursor.moveToPosition(1);
+        assertEquals("Error: Nearest query should find the location across the antimeridian",
+                westRowId, cursor.getLong(0));
+        cursor.close();
+
+        Uri[] badUris = {
+                LocationEntry.CONTENT_URI.buildUpon().appendPath(WeatherContract.PATH_NEAREST)
+                        .appendQueryParameter(LocationEntry.PARAM_LAT, "10").build(),
+                LocationEntry.CONTENT_URI.buildUpon().appendPath(WeatherContract.PATH_NEAREST)
+                        .appendQueryParameter(LocationEntry.PARAM_LAT, "north")
+                        .appendQueryParameter(LocationEntry.PARAM_LONG, "10").build(),
+        };
+        for (Uri uri : badUris) {
+            try {
+                mContext.getContentResolver().query(uri, null, null, null, null);
+                fail("Error: " + uri + " should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
     /*
         This test uses the provider to insert and then update the data. Uncomment this test to
         see if your update location is functioning correctly.
@@ -512,4 +650,58 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Writes a ForecastBatch straight through the provider's compiled insert and checks that
+        the rows read back through the provider exactly as a ContentValues bulkInsert would
+        have stored them.
+     */
+    public void testBulkInsertForecastBatch() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        int startDay = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
+        ForecastBatch batch = new ForecastBatch(1);
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+            batch.add(locationRowId, SunshineDateUtils.getStartOfJulianDay(startDay + i), 321,
+                    "Asteroids", 0.75 * i, 2.5 * i, 1.5, 1.25, 5.5 + 0.25 * i, 1.125);
+        }
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        int insertCount = WeatherProvider.bulkInsert(mContext, batch);
+
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testBulkInsertForecastBatch.  Error validating WeatherEntry " + i,
+                    cursor, batch.toContentValues(i));
+        }
+        cursor.close();
+
+        // A cleared batch can be refilled and written again; the unique (date, location)
+        // constraint replaces the earlier rows rather than adding to them.
+        batch.clear();
+        batch.add(locationRowId, SunshineDateUtils.getStartOfJulianDay(startDay), 800,
+                "Clear", 10, 20, 30, 1000, 2, 90);
+        assertEquals(1, WeatherProvider.bulkInsert(mContext, batch));
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.util.TimeZone;
+
+/*
+    Checks that SunshineDateUtils gives exactly the results the old android.text.format.Time
+    based code did, stepping through a year that includes both DST transitions in zones with
+    whole-hour, half-hour and 45 minute offsets on both sides of the equator.
+ */
+public class TestSunshineDateUtils extends AndroidTestCase {
+
+    private static final String[] TEST_ZONES = {
+            "America/Los_Angeles",
+            "America/New_York",
+            "America/St_Johns",
+            "Europe/London",
+            "Europe/Berlin",
+            "Asia/Kolkata",
+            "Australia/Sydney",
+            "Pacific/Chatham",
+            "UTC"
+    };
+
+    private static final long TEST_START = 1420070400000L;  // January 1st, 2015 UTC
+    private static final long TEST_END = TEST_START + 366 * SunshineDateUtils.DAY_IN_MILLIS;
+    // Not a divisor of an hour or a day, so we land on every minute of the day over the year
+    private static final long TEST_STEP = 37 * SunshineDateUtils.MINUTE_IN_MILLIS + 1234;
+
+    private TimeZone mDefaultTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDefaultTimeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TimeZone.setDefault(mDefaultTimeZone);
+        SunshineDateUtils.onTimeZoneChanged();
+        super.tearDown();
+    }
+
+    private static long legacyNormalizeDate(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    private static int legacyJulianDay(long date) {
+        Time time = new Time();
+        time.set(date);
+        return Time.getJulianDay(date, time.gmtoff);
+    }
+
+    public void testMatchesTimeAcrossDstTransitions() {
+        for (String zone : TEST_ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            SunshineDateUtils.onTimeZoneChanged();
+
+            for (long date = TEST_START; date < TEST_END; date += TEST_STEP) {
+                int julianDay = legacyJulianDay(date);
+                long normalized = legacyNormalizeDate(date);
+
+                assertEquals("Error: julian day differs in " + zone + " at " + date,
+                        julianDay, SunshineDateUtils.getJulianDay(date));
+                assertEquals("Error: normalized date differs in " + zone + " at " + date,
+                        normalized, SunshineDateUtils.normalizeDate(date));
+                assertEquals("Error: start of julian day differs in " + zone + " at " + date,
+                        normalized, SunshineDateUtils.getStartOfJulianDay(julianDay));
+            }
+        }
+    }
+
+    public void testTimeZoneChange() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        SunshineDateUtils.onTimeZoneChanged();
+        long newYork = SunshineDateUtils.normalizeDate(TEST_START);
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Australia/Sydney"));
+        SunshineDateUtils.onTimeZoneChanged();
+        long sydney = SunshineDateUtils.normalizeDate(TEST_START);
+
+        assertEquals("Error: normalized date did not follow the timezone change",
+                legacyNormalizeDate(TEST_START), sydney);
+        assertTrue("Error: cached day window survived a timezone change", newYork != sydney);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/*
+    Applies pushed forecast changes to the provider, and checks that the payloads it can't apply
+    are turned away for a sync instead.
+ */
+public class TestForecastPush extends AndroidTestCase {
+
+    private static final String LOCATION = "push-test";
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteLocation();
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, LOCATION);
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Push Test");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mLocationId = Long.parseLong(mContext.getContentResolver()
+                .insert(WeatherContract.LocationEntry.CONTENT_URI, location)
+                .getLastPathSegment());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteLocation();
+        super.tearDown();
+    }
+
+    private void deleteLocation() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " IN (SELECT "
+                        + WeatherContract.LocationEntry._ID + " FROM "
+                        + WeatherContract.LocationEntry.TABLE_NAME + " WHERE "
+                        + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?)",
+                new String[]{LOCATION});
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{LOCATION});
+    }
+
+    private static String payload(int version, String location, String date, int weatherId) {
+        return "{\"v\": " + version + ", \"location\": \"" + location + "\", \"days\": [{"
+                + "\"date\": \"" + date + "\", \"weather_id\": " + weatherId + ", "
+                + "\"description\": \"Rain\", \"min\": 10.5, \"max\": 15.25, \"humidity\": 80, "
+                + "\"pressure\": 1012.5, \"wind\": 4.1, \"deg\": 200}]}";
+    }
+
+    private static String today() {
+        Calendar calendar = Calendar.getInstance();
+        return String.format(Locale.US, "%04d-%02d-%02d", calendar.get(Calendar.YEAR),
+                calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    private Cursor queryToday() {
+        return mContext.getContentResolver().query(WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP},
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(mLocationId), Long.toString(
+                        SunshineDateUtils.normalizeDate(System.currentTimeMillis()))},
+                null);
+    }
+
+    public void testParseJulianDay() throws JSONException {
+        assertEquals(2440588, ForecastPush.parseJulianDay("1970-01-01"));
+        assertEquals("Error: leap day should follow February 28th",
+                ForecastPush.parseJulianDay("2016-02-28") + 1,
+                ForecastPush.parseJulianDay("2016-02-29"));
+        assertEquals(SunshineDateUtils.getJulianDay(System.currentTimeMillis()),
+                ForecastPush.parseJulianDay(today()));
+
+        assertEquals("Error: 2000 was a leap year", ForecastPush.parseJulianDay("2000-03-01") - 1,
+                ForecastPush.parseJulianDay("2000-02-29"));
+
+        String[] bad = {"2016-1-01", "2016/01/01", "2016-13-01", "2016-01-00", "20a6-01-01",
+                "2016-02-30", "2015-02-29", "1900-02-29", "2016-04-31", "2016-01-32"};
+        for (String date : bad) {
+            try {
+                ForecastPush.parseJulianDay(date);
+                fail("Error: " + date + " should not parse");
+            } catch (JSONException expected) {
+            }
+        }
+    }
+
+    public void testApply() {
+        assertEquals(1, ForecastPush.apply(mContext, payload(1, LOCATION, today(), 500)));
+        Cursor cursor = queryToday();
+        assertEquals("Error: pushed day should be written", 1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(500, cursor.getInt(0));
+        assertEquals(15.25, cursor.getDouble(1));
+        cursor.close();
+
+        assertEquals(1, ForecastPush.apply(mContext, payload(1, LOCATION, today(), 800)));
+        cursor = queryToday();
+        assertEquals("Error: a pushed day should replace the day's row", 1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(800, cursor.getInt(0));
+        cursor.close();
+
+        assertEquals("Error: days before today should be ignored",
+                0, ForecastPush.apply(mContext, payload(1, LOCATION, "2014-12-20", 800)));
+    }
+
+    public void testUnappliedPayloadsNeedSync() {
+        assertEquals("Error: unknown versions should need a sync",
+                -1, ForecastPush.apply(mContext, payload(2, LOCATION, today(), 500)));
+        assertEquals("Error: unsynced locations should need a sync",
+                -1, ForecastPush.apply(mContext, payload(1, "not-synced", today(), 500)));
+        assertEquals("Error: malformed payloads should need a sync",
+                -1, ForecastPush.apply(mContext, "{\"v\": 1, \"days\": "));
+
+        StringBuilder days = new StringBuilder();
+        for (int i = 0; i <= ForecastPush.MAX_DAYS; i++) {
+            days.append(i == 0 ? "" : ", ").append("{}");
+        }
+        assertEquals("Error: too many days should need a sync", -1, ForecastPush.apply(mContext,
+                "{\"v\": 1, \"location\": \"" + LOCATION + "\", \"days\": [" + days + "]}"));
+
+        Cursor cursor = queryToday();
+        assertEquals("Error: nothing should have been written", 0, cursor.getCount());
+        cursor.close();
+    }
+}
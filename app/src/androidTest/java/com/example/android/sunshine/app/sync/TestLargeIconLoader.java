@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.Notification;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.NotificationCompat;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.art.BitmapCache;
+import com.example.android.sunshine.app.art.WeatherArt;
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.example.android.sunshine.common.WeatherConditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/*
+    Walks LargeIconLoader's lookup order with a stand-in for Glide: a kept copy is used without
+    loading, a load that misses the deadline falls back to the local art, and an image that
+    arrives late replaces the notification's icon in place without alerting again.
+ */
+public class TestLargeIconLoader extends AndroidTestCase {
+
+    private static final int SIZE = 64;
+    // Short, so a load that never finishes doesn't hold the test up
+    private static final long TIMEOUT_MILLIS = 50;
+
+    // Loads only finish when the test runs the load
+    static class StubArtLoader implements LargeIconLoader.ArtLoader {
+        final FutureTask<Bitmap> load;
+        int starts;
+        int releases;
+
+        StubArtLoader(final Bitmap image) {
+            load = new FutureTask<Bitmap>(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() {
+                    return image;
+                }
+            });
+        }
+
+        @Override
+        public Future<Bitmap> start(Context appContext, WeatherArt art, int width, int height) {
+            starts++;
+            return load;
+        }
+
+        @Override
+        public void finishLate(Context appContext, WeatherArt art, int width, int height,
+                               final Future<Bitmap> started,
+                               final LargeIconLoader.OnLateIconListener listener) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        final Bitmap image = started.get();
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                release(started);
+                                listener.onLateIcon(image);
+                            }
+                        });
+                    } catch (InterruptedException | ExecutionException e) {
+                        release(started);
+                    }
+                }
+            }.start();
+        }
+
+        @Override
+        public synchronized void release(Future<Bitmap> started) {
+            releases++;
+        }
+
+        synchronized int releaseCount() {
+            return releases;
+        }
+    }
+
+    // Records what would be posted instead of posting it
+    static class RecordingNotification extends SunshineSyncAdapter.WeatherNotification {
+        final List<Integer> ids = new ArrayList<Integer>();
+        final List<Notification> posted = new ArrayList<Notification>();
+
+        RecordingNotification(Context context) {
+            super(null, new NotificationCompat.Builder(context)
+                    .setSmallIcon(R.drawable.ic_clear)
+                    .setContentTitle("Sunshine")
+                    .setContentText("Clear"));
+        }
+
+        @Override
+        synchronized void show(int id, Notification notification) {
+            ids.add(id);
+            posted.add(notification);
+        }
+
+        @Override
+        boolean isShowing() {
+            return true;
+        }
+
+        synchronized int postedCount() {
+            return posted.size();
+        }
+    }
+
+    private WeatherArt createArt() {
+        // A pack of its own, so nothing kept by other tests or the app is found
+        return new WeatherArt("https://test.invalid/" + getName() + System.nanoTime() + "/%s.png",
+                WeatherConditions.CLEAR);
+    }
+
+    private static Bitmap createRemoteImage() {
+        Bitmap image = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        image.eraseColor(Color.RED);
+        return image;
+    }
+
+    public void testKeptCopySkipsLoad() {
+        WeatherArt art = createArt();
+        Bitmap kept = BitmapCache.get(mContext).putArt(art, SIZE, SIZE, createRemoteImage());
+        StubArtLoader loader = new StubArtLoader(createRemoteImage());
+
+        Bitmap largeIcon = LargeIconLoader.load(mContext, art, R.drawable.art_clear, SIZE, SIZE,
+                new RecordingNotification(mContext), loader, TIMEOUT_MILLIS);
+        assertSame("Error: the kept copy should be used", kept, largeIcon);
+        assertEquals("Error: a kept copy should not start a load", 0, loader.starts);
+    }
+
+    public void testLoadInTimeIsKept() {
+        WeatherArt art = createArt();
+        StubArtLoader loader = new StubArtLoader(createRemoteImage());
+        loader.load.run();
+
+        Bitmap largeIcon = LargeIconLoader.load(mContext, art, R.drawable.art_clear, SIZE, SIZE,
+                new RecordingNotification(mContext), loader, TIMEOUT_MILLIS);
+        assertEquals(1, loader.starts);
+        assertEquals("Error: a finished load should be let go", 1, loader.releaseCount());
+        assertSame("Error: the loaded image should be kept for the next sync", largeIcon,
+                BitmapCache.get(mContext).getArt(art, SIZE, SIZE));
+    }
+
+    public void testSlowLoadFallsBackToLocalArt() {
+        WeatherArt art = createArt();
+        StubArtLoader loader = new StubArtLoader(createRemoteImage());
+
+        // The load never finishes on its own, so getting an icon back at all means load gave up
+        Bitmap largeIcon = LargeIconLoader.load(mContext, art, R.drawable.art_clear, SIZE, SIZE,
+                new RecordingNotification(mContext), loader, TIMEOUT_MILLIS);
+        assertSame("Error: a late load should fall back to the local art",
+                BitmapCache.get(mContext).getBitmap(R.drawable.art_clear, SIZE, SIZE), largeIcon);
+        assertNull(BitmapCache.get(mContext).getArt(art, SIZE, SIZE));
+
+        // Let the late load finish so it doesn't outlive the test
+        loader.load.run();
+    }
+
+    public void testLateIconUpdatesNotificationInPlace() {
+        WeatherArt art = createArt();
+        StubArtLoader loader = new StubArtLoader(createRemoteImage());
+        final RecordingNotification notification = new RecordingNotification(mContext);
+
+        Bitmap largeIcon = LargeIconLoader.load(mContext, art, R.drawable.art_clear, SIZE, SIZE,
+                notification, loader, TIMEOUT_MILLIS);
+        notification.post(largeIcon);
+        assertEquals(1, notification.postedCount());
+
+        loader.load.run();
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return notification.postedCount() == 2;
+            }
+        }.run();
+
+        assertEquals("Error: the late icon should update the same notification",
+                SunshineSyncAdapter.WEATHER_NOTIFICATION_ID, (int) notification.ids.get(0));
+        assertEquals(notification.ids.get(0), notification.ids.get(1));
+        Notification first = notification.posted.get(0);
+        Notification late = notification.posted.get(1);
+        assertEquals(0, first.flags & Notification.FLAG_ONLY_ALERT_ONCE);
+        assertTrue("Error: the late update should not alert again",
+                (late.flags & Notification.FLAG_ONLY_ALERT_ONCE) != 0);
+        assertSame("Error: the late update should carry the art pack image",
+                BitmapCache.get(mContext).getArt(art, SIZE, SIZE), late.largeIcon);
+        assertEquals("Error: the late load should be let go", 1, loader.releaseCount());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearService;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.common.WearForecast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Drives WearChannel with a local stand-in for the Wearable data layer, counting connections
+    set up and data items sent, and checks that a burst of update requests starts WearService
+    once.  Before WearChannel, every update set up a connection and sent a data item.
+ */
+public class TestWearChannel extends AndroidTestCase {
+
+    static class FakeDataLayer implements WearDataLayer {
+        boolean connected;
+        boolean failPuts;
+        int connects;
+        int puts;
+
+        @Override
+        public boolean connect() {
+            connects++;
+            connected = true;
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean putForecast(byte[] payload) {
+            puts++;
+            return !failPuts;
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+        }
+    }
+
+    private static byte[] forecast(int weatherId, double high) {
+        WearForecast forecast = new WearForecast();
+        forecast.reset(true, 2457000);
+        forecast.addDay(weatherId, high, 12);
+        return forecast.encode();
+    }
+
+    // Records the services it is asked to start instead of starting them
+    static class RecordingContext extends ContextWrapper {
+        final List<Intent> started = new ArrayList<Intent>();
+
+        RecordingContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public ComponentName startService(Intent service) {
+            started.add(service);
+            return service.getComponent();
+        }
+    }
+
+    public void testBurstOfRequestsStartsServiceOnce() {
+        RecordingContext context = new RecordingContext(mContext);
+        // Settle anything the app itself has requested
+        WearChannel.awaitQuiet();
+
+        for (int i = 0; i < 5; i++) {
+            WearChannel.requestUpdate(context);
+        }
+        assertEquals("Error: a burst of requests should start the service once",
+                1, context.started.size());
+        assertEquals(WearService.ACTION_UPDATE_WATCH_FACE, context.started.get(0).getAction());
+
+        long start = SystemClock.uptimeMillis();
+        WearChannel.awaitQuiet();
+        assertTrue("Error: the service should wait for the burst to end",
+                SystemClock.uptimeMillis() - start >= WearChannel.DEBOUNCE_MILLIS / 2);
+
+        WearChannel.requestUpdate(context);
+        assertEquals("Error: a request after the update should start the service again",
+                2, context.started.size());
+        WearChannel.awaitQuiet();
+    }
+
+    public void testBurstOfSameForecastIsSentOnce() {
+        FakeDataLayer dataLayer = new FakeDataLayer();
+        WearChannel channel = new WearChannel(dataLayer);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(channel.send(forecast(800, 21)));
+        }
+        assertEquals("Error: the connection should be set up once", 1, dataLayer.connects);
+        assertEquals("Error: an identical forecast should be sent once", 1, dataLayer.puts);
+        assertEquals(1, channel.getConnectionCount());
+        assertEquals(1, channel.getSentCount());
+        assertEquals(4, channel.getSkippedCount());
+        channel.disconnect();
+    }
+
+    public void testChangedForecastReusesConnection() {
+        FakeDataLayer dataLayer = new FakeDataLayer();
+        WearChannel channel = new WearChannel(dataLayer);
+        channel.send(forecast(800, 21));
+        channel.send(forecast(800, 22));
+        channel.send(forecast(500, 22));
+        assertEquals("Error: the connection should be reused", 1, dataLayer.connects);
+        assertEquals("Error: every change should be sent", 3, dataLayer.puts);
+
+        channel.disconnect();
+        assertFalse("Error: disconnect should close the connection", dataLayer.connected);
+        channel.send(forecast(800, 21));
+        assertEquals("Error: a send after disconnecting should reconnect", 2, dataLayer.connects);
+        channel.disconnect();
+    }
+
+    public void testFailedSendIsRetried() {
+        FakeDataLayer dataLayer = new FakeDataLayer();
+        WearChannel channel = new WearChannel(dataLayer);
+        dataLayer.failPuts = true;
+        assertFalse(channel.send(forecast(800, 21)));
+        dataLayer.failPuts = false;
+        assertTrue(channel.send(forecast(800, 21)));
+        assertEquals("Error: a forecast that failed to send should not count as sent",
+                2, dataLayer.puts);
+        assertEquals(1, channel.getSentCount());
+        channel.disconnect();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearService;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.common.WearForecast;
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.Arrays;
+
+/*
+    Checks the binary forecast sent to the watch face survives a round trip, and compares its
+    size with the map of formatted strings it replaced.
+ */
+public class TestWearForecast extends AndroidTestCase {
+    private static final String LOG_TAG = TestWearForecast.class.getSimpleName();
+
+    private static final int DAYS = 7;
+
+    private static WearForecast createForecast(int days) {
+        WearForecast forecast = new WearForecast();
+        forecast.reset(true, 2457000);
+        for (int i = 0; i < days; i++) {
+            forecast.addDay(800 + i % 5, 21.46 + i, -3.04 - i);
+        }
+        return forecast;
+    }
+
+    public void testRoundTrip() {
+        WearForecast sent = createForecast(DAYS);
+        byte[] payload = sent.encode();
+        assertEquals(WearForecast.encodedSize(DAYS), payload.length);
+
+        WearForecast received = new WearForecast();
+        assertTrue("Error: payload should decode", received.decode(payload));
+        assertTrue(received.isMetric());
+        assertEquals(2457000, received.getStartJulianDay());
+        assertEquals(DAYS, received.getDayCount());
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals(sent.getWeatherId(i), received.getWeatherId(i));
+            assertEquals(sent.getHighCelsius(i), received.getHighCelsius(i));
+            assertEquals(sent.getLowCelsius(i), received.getLowCelsius(i));
+        }
+        assertEquals("Error: temperatures should be sent raw, to the hundredth",
+                21.46, received.getHighCelsius(0));
+        assertEquals("Error: negative temperatures should survive",
+                -3.04, received.getLowCelsius(0));
+        assertEquals("Error: 21.46 should show as the 21 the phone shows",
+                21, received.getHigh(0));
+        assertEquals(-3, received.getLow(0));
+        assertEquals(1, received.indexOfDay(2457001));
+        assertEquals(-1, received.indexOfDay(2457000 + DAYS));
+    }
+
+    public void testRoundsOnceInTheUsersUnits() {
+        WearForecast forecast = new WearForecast();
+        forecast.reset(false, 2457000);
+        forecast.addDay(800, 21.46, -0.6);
+        WearForecast received = new WearForecast();
+        assertTrue(received.decode(forecast.encode()));
+        assertFalse(received.isMetric());
+        assertEquals("Error: the watch should convert 21.46C to 70.6F and show 71",
+                71, received.getHigh(0));
+        assertEquals(31, received.getLow(0));
+        assertEquals("Error: the raw Celsius should still be sent", 21.46,
+                received.getHighCelsius(0));
+
+        // 21.46 once went out as 21.5 and was rounded again to 22
+        forecast.reset(true, 2457000);
+        forecast.addDay(800, 21.46, 21.5);
+        assertTrue(received.decode(forecast.encode()));
+        assertEquals("Error: temperatures should only be rounded once", 21, received.getHigh(0));
+        assertEquals(22, received.getLow(0));
+
+        assertEquals(22, WearForecast.roundDegrees(21.5));
+        assertEquals("Error: rounding should be half away from zero",
+                -22, WearForecast.roundDegrees(-21.5));
+        assertEquals(21, WearForecast.roundDegrees(21.49));
+    }
+
+    public void testRejectsUnknownPayloads() {
+        WearForecast forecast = createForecast(2);
+        byte[] payload = createForecast(DAYS).encode();
+
+        payload[0] = WearForecast.VERSION + 1;
+        assertFalse("Error: unknown versions should be rejected", forecast.decode(payload));
+        payload[0] = WearForecast.VERSION;
+        assertFalse("Error: truncated payloads should be rejected",
+                forecast.decode(Arrays.copyOf(payload, payload.length - 1)));
+        assertFalse(forecast.decode(null));
+        assertEquals("Error: a rejected payload should leave the forecast alone",
+                2, forecast.getDayCount());
+    }
+
+    public void testSmallerThanStringMap() {
+        WearForecast forecast = createForecast(DAYS);
+        DataMap binary = new DataMap();
+        binary.putByteArray("KEY_FORECAST", forecast.encode());
+
+        // What the same days cost as the per-day keys and formatted strings sent before
+        DataMap strings = new DataMap();
+        for (int i = 0; i < DAYS; i++) {
+            strings.putInt("KEY_WEATHER_ID_" + i, forecast.getWeatherId(i));
+            strings.putString("KEY_MAX_TEMP_" + i, forecast.getHigh(i) + "°");
+            strings.putString("KEY_MIN_TEMP_" + i, forecast.getLow(i) + "°");
+        }
+
+        int binarySize = binary.toByteArray().length;
+        int stringSize = strings.toByteArray().length;
+        Log.i(LOG_TAG, DAYS + " days: binary " + binarySize + " bytes, strings "
+                + stringSize + " bytes");
+        assertTrue("Error: the binary payload should be smaller than the string map",
+                binarySize < stringSize);
+    }
+}
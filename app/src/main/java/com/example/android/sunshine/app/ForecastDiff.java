@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * Works out the item range updates that turn one forecast list into another.
+ *
+ * Both lists are sorted by date and hold at most one item per date, so a single merge pass
+ * finds every insertion, removal and change; there is never a move.  Updates are recorded as
+ * (type, position, count) triples in the order RecyclerView has to receive them.
+ */
+public class ForecastDiff {
+
+    static final int INSERT = 0;
+    static final int REMOVE = 1;
+    static final int CHANGE = 2;
+
+    private static final int[] NO_UPDATES = new int[0];
+
+    private int[] mUpdates = new int[3 * 4];
+    private int mSize;
+
+    private ForecastDiff() {
+    }
+
+    private void add(int type, int position, int count) {
+        if (mSize > 0 && mUpdates[mSize - 3] == type) {
+            int lastPosition = mUpdates[mSize - 2];
+            int lastCount = mUpdates[mSize - 1];
+            // Removals all happen at the same position; inserts and changes run forwards.
+            if ((type == REMOVE && lastPosition == position) ||
+                    (type != REMOVE && lastPosition + lastCount == position)) {
+                mUpdates[mSize - 1] = lastCount + count;
+                return;
+            }
+        }
+        if (mSize + 3 > mUpdates.length) {
+            int[] grown = new int[mUpdates.length * 2];
+            System.arraycopy(mUpdates, 0, grown, 0, mSize);
+            mUpdates = grown;
+        }
+        mUpdates[mSize++] = type;
+        mUpdates[mSize++] = position;
+        mUpdates[mSize++] = count;
+    }
+
+    /**
+     * Returns the updates that turn oldItems into newItems.  An empty array means nothing
+     * visible changed.
+     */
+    public static int[] compute(ForecastItem[] oldItems, ForecastItem[] newItems) {
+        ForecastDiff diff = new ForecastDiff();
+        int oldIndex = 0;
+        int newIndex = 0;
+        // Where the next update lands in the list as it stands after the updates so far
+        int position = 0;
+
+        while (oldIndex < oldItems.length || newIndex < newItems.length) {
+            if (newIndex == newItems.length ||
+                    (oldIndex < oldItems.length && oldItems[oldIndex].date < newItems[newIndex].date)) {
+                diff.add(REMOVE, position, 1);
+                oldIndex++;
+            } else if (oldIndex == oldItems.length || oldItems[oldIndex].date > newItems[newIndex].date) {
+                diff.add(INSERT, position, 1);
+                newIndex++;
+                position++;
+            } else {
+                if (!oldItems[oldIndex].hasSameContent(newItems[newIndex])) {
+                    diff.add(CHANGE, position, 1);
+                }
+                oldIndex++;
+                newIndex++;
+                position++;
+            }
+        }
+
+        // The first row uses its own layout, so a new first day has to be rebound as such.
+        if (newItems.length > 0 && oldItems.length > 0 && oldItems[0].date != newItems[0].date) {
+            diff.add(CHANGE, 0, 1);
+        }
+
+        if (diff.mSize == 0) {
+            return NO_UPDATES;
+        }
+        int[] updates = new int[diff.mSize];
+        System.arraycopy(diff.mUpdates, 0, updates, 0, diff.mSize);
+        return updates;
+    }
+
+    /**
+     * Sends the updates computed by {@link #compute} to the adapter.
+     */
+    public static void dispatch(int[] updates, RecyclerView.Adapter adapter) {
+        for (int i = 0; i < updates.length; i += 3) {
+            int position = updates[i + 1];
+            int count = updates[i + 2];
+            switch (updates[i]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case CHANGE:
+                    adapter.notifyItemRangeChanged(position, count);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import com.example.android.sunshine.app.art.WeatherArt;
+
+/**
+ * One row of the forecast list, with everything the list shows already resolved and formatted.
+ * Items are built by {@link ForecastLoader} on a background thread and never change afterwards,
+ * so {@link ForecastAdapter} only has to copy fields into views when it binds.
+ */
+public final class ForecastItem {
+
+    public final long id;
+    public final long date;
+    public final int weatherId;
+
+    // The "Today, June 24" form is only used by the today layout
+    public final String dateText;
+    public final String todayDateText;
+
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String highText;
+    public final String highContentDescription;
+    public final String lowText;
+    public final String lowContentDescription;
+
+    public final int iconResource;
+    public final int artResource;
+    // null when the user has picked the local graphics
+    public final WeatherArt art;
+
+    public final String transitionName;
+
+    ForecastItem(Context context, long id, long date, int weatherId,
+                 double high, double low, boolean useLocalGraphics) {
+        this.id = id;
+        this.date = date;
+        this.weatherId = weatherId;
+
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        todayDateText = Utility.getFriendlyDayString(context, date, true);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+
+        highText = Utility.formatTemperature(context, high);
+        highContentDescription = context.getString(R.string.a11y_high_temp, highText);
+        lowText = Utility.formatTemperature(context, low);
+        lowContentDescription = context.getString(R.string.a11y_low_temp, lowText);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        art = useLocalGraphics ? null : Utility.getArtForWeatherCondition(context, weatherId);
+
+        // this enables better animations. even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view.  Keyed by date rather than
+        // position so that a row keeps its name when the days above it are dropped.
+        transitionName = "iconView" + date;
+    }
+
+    /**
+     * Returns true if binding other would show exactly what binding this item shows.  The row
+     * id is not compared: it changes on every sync even when the forecast doesn't.
+     */
+    public boolean hasSameContent(ForecastItem other) {
+        return date == other.date
+                && weatherId == other.weatherId
+                && iconResource == other.iconResource
+                && artResource == other.artResource
+                && dateText.equals(other.dateText)
+                && todayDateText.equals(other.todayDateText)
+                && description.equals(other.description)
+                && highText.equals(other.highText)
+                && lowText.equals(other.lowText)
+                && (art == null ? other.art == null : art.equals(other.art));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Loads the forecast for the preferred location and turns it into an array of
+ * {@link ForecastItem}s on the loader's background thread, so nothing is read from a Cursor or
+ * formatted while the list scrolls.  Reloads whenever anything under the weather URI changes,
+ * which includes unit and art pack changes (see SettingsActivity), and whenever the date
+ * changes, since items carry "Today" and "Tomorrow" labels and the list starts at today.
+ */
+public class ForecastLoader extends AsyncTaskLoader<ForecastLoader.Result> {
+
+    // For the forecast view we're showing only a small subset of the stored data.
+    // Specify the columns we need.
+    private static final String[] FORECAST_COLUMNS = {
+            // In this case the id needs to be fully qualified with a table name, since
+            // the content provider joins the location & weather tables in the background
+            // (both have an _id column)
+            // On the one hand, that's annoying.  On the other, you can search the weather table
+            // using the location set by the user, which is only in the Location table.
+            // So the convenience is worth it.
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
+    // must change.
+    static final int COL_WEATHER_ID = 0;
+    static final int COL_WEATHER_DATE = 1;
+    static final int COL_WEATHER_MAX_TEMP = 2;
+    static final int COL_WEATHER_MIN_TEMP = 3;
+    static final int COL_WEATHER_CONDITION_ID = 4;
+    static final int COL_COORD_LAT = 5;
+    static final int COL_COORD_LONG = 6;
+
+    /**
+     * What the forecast list shows: the rows, plus where the location is for the map action.
+     * When the loader had already delivered a list, diffBase is that list and updates holds the
+     * {@link ForecastDiff} updates that turn it into this one.
+     */
+    public static final class Result {
+        public final ForecastItem[] items;
+        public final boolean hasCoordinates;
+        public final double latitude;
+        public final double longitude;
+
+        public final ForecastItem[] diffBase;
+        public final int[] updates;
+
+        Result(ForecastItem[] items, boolean hasCoordinates, double latitude, double longitude) {
+            this(items, hasCoordinates, latitude, longitude, null, null);
+        }
+
+        Result(ForecastItem[] items, boolean hasCoordinates, double latitude, double longitude,
+               ForecastItem[] diffBase, int[] updates) {
+            this.items = items;
+            this.hasCoordinates = hasCoordinates;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.diffBase = diffBase;
+            this.updates = updates;
+        }
+    }
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final BroadcastReceiver mDateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onContentChanged();
+        }
+    };
+    private boolean mObserverRegistered;
+    // Written on the main thread when a result is delivered, read by the next load to diff against
+    private volatile Result mResult;
+
+    public ForecastLoader(Context context) {
+        super(context);
+    }
+
+    @Override
+    public Result loadInBackground() {
+        Result result = load();
+        Result previous = mResult;
+        if (previous == null) {
+            return result;
+        }
+        // Diff here rather than on the main thread; the adapter applies the updates only if
+        // it is still showing the list we diffed against.
+        return new Result(result.items, result.hasCoordinates, result.latitude, result.longitude,
+                previous.items, ForecastDiff.compute(previous.items, result.items));
+    }
+
+    private Result load() {
+        Context context = getContext();
+
+        // To only show current and future dates, filter the query to return weather only for
+        // dates after or including today.
+
+        // Sort order:  Ascending, by date.
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        String locationSetting = Utility.getPreferredLocation(context);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+
+        Cursor cursor = context.getContentResolver().query(weatherForLocationUri,
+                FORECAST_COLUMNS,
+                null,
+                null,
+                sortOrder);
+        if (cursor == null) {
+            return new Result(new ForecastItem[0], false, 0, 0);
+        }
+
+        try {
+            boolean useLocalGraphics = Utility.usingLocalGraphics(context);
+            ForecastItem[] items = new ForecastItem[cursor.getCount()];
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                items[i] = new ForecastItem(context,
+                        cursor.getLong(COL_WEATHER_ID),
+                        cursor.getLong(COL_WEATHER_DATE),
+                        cursor.getInt(COL_WEATHER_CONDITION_ID),
+                        cursor.getDouble(COL_WEATHER_MAX_TEMP),
+                        cursor.getDouble(COL_WEATHER_MIN_TEMP),
+                        useLocalGraphics);
+            }
+
+            if (cursor.moveToFirst()) {
+                return new Result(items, true,
+                        cursor.getDouble(COL_COORD_LAT), cursor.getDouble(COL_COORD_LONG));
+            }
+            return new Result(items, false, 0, 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void deliverResult(Result result) {
+        if (isReset()) {
+            return;
+        }
+        mResult = result;
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            IntentFilter dateFilter = new IntentFilter(Intent.ACTION_DATE_CHANGED);
+            dateFilter.addAction(Intent.ACTION_TIME_CHANGED);
+            dateFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            getContext().registerReceiver(mDateReceiver, dateFilter);
+            mObserverRegistered = true;
+        }
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (takeContentChanged() || mResult == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mResult = null;
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            getContext().unregisterReceiver(mDateReceiver);
+            mObserverRegistered = false;
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.example.android.sunshine.app;
 import android.annotation.TargetApi;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
@@ -29,6 +31,7 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
+import com.example.android.sunshine.app.art.WeatherArt;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.location.places.Place;
@@ -46,6 +49,33 @@ import com.google.android.gms.maps.model.LatLng;
 public class SettingsActivity extends PreferenceActivity
         implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener {
     protected final static int PLACE_PICKER_REQUEST = 9090;
+
+    // A picked place this close to a location we already hold a forecast for is treated as
+    // the same place, so its cached forecast is shown instead of fetching a new one.
+    private static final float CACHED_LOCATION_REUSE_METERS = 10000f;
+
+    private static final String[] NEARBY_LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    private static final int COL_LOCATION_SETTING = 0;
+    private static final int COL_COORD_LAT = 1;
+    private static final int COL_COORD_LONG = 2;
+
+    // A saved location close enough to a picked place to show its forecast instead
+    private static final class CachedLocation {
+        final String locationSetting;
+        final double latitude;
+        final double longitude;
+
+        CachedLocation(String locationSetting, double latitude, double longitude) {
+            this.locationSetting = locationSetting;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
     private ImageView mAttribution;
 
     @Override
@@ -176,7 +206,14 @@ public class SettingsActivity extends PreferenceActivity
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
-            // art pack have changed. update lists of weather entries accordingly
+            // art pack have changed. Fetch the new pack's images once, in the background, rather
+            // than leaving every list row and widget to start on them, then update lists of
+            // weather entries accordingly
+            String artPackUrlFormat = sharedPreferences.getString(key,
+                    getString(R.string.pref_art_pack_sunshine));
+            if (!artPackUrlFormat.equals(getString(R.string.pref_art_pack_sunshine))) {
+                WeatherArt.prefetch(this, artPackUrlFormat);
+            }
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
         }
     }
@@ -203,6 +240,20 @@ public class SettingsActivity extends PreferenceActivity
                     address = String.format("(%.2f, %.2f)",latLong.latitude, latLong.longitude);
                 }
 
+                // If we already have a current forecast for somewhere close by, show that rather
+                // than kicking off a fetch for what is effectively the same place.
+                CachedLocation cachedLocation =
+                        findCachedLocationNear(latLong.latitude, latLong.longitude);
+                double latitude = latLong.latitude;
+                double longitude = latLong.longitude;
+                if (cachedLocation != null) {
+                    // Keep the setting and coordinates together, so that later syncs fetch the
+                    // place whose rows they replace
+                    address = cachedLocation.locationSetting;
+                    latitude = cachedLocation.latitude;
+                    longitude = cachedLocation.longitude;
+                }
+
                 SharedPreferences sharedPreferences =
                         PreferenceManager.getDefaultSharedPreferences(this);
                 SharedPreferences.Editor editor = sharedPreferences.edit();
@@ -211,10 +262,8 @@ public class SettingsActivity extends PreferenceActivity
                 // Also store the latitude and longitude so that we can use these to get a precise
                 // result from our weather service. We cannot expect the weather service to
                 // understand addresses that Google formats.
-                editor.putFloat(getString(R.string.pref_location_latitude),
-                        (float) latLong.latitude);
-                editor.putFloat(getString(R.string.pref_location_longitude),
-                        (float) latLong.longitude);
+                editor.putFloat(getString(R.string.pref_location_latitude), (float) latitude);
+                editor.putFloat(getString(R.string.pref_location_longitude), (float) longitude);
                 editor.commit();
 
                 // Tell the SyncAdapter that we've changed the location, so that we can update
@@ -234,11 +283,72 @@ public class SettingsActivity extends PreferenceActivity
                             Snackbar.LENGTH_LONG).show();
                 }
 
-                Utility.resetLocationStatus(this);
-                SunshineSyncAdapter.syncImmediately(this);
+                if (cachedLocation != null) {
+                    sharedPreferences.edit().putInt(getString(R.string.pref_location_status_key),
+                            SunshineSyncAdapter.LOCATION_STATUS_OK).apply();
+                    // No sync will tell the widgets, Muzei and the watch face about the switch
+                    SunshineSyncAdapter.updateWeatherViews(this);
+                } else {
+                    Utility.resetLocationStatus(this);
+                    SunshineSyncAdapter.syncImmediately(this);
+                }
             }
         } else {
             super.onActivityResult(requestCode, resultCode, data);
         }
     }
+
+    /**
+     * Looks up the saved location nearest to the given point.  Returns it if it is within
+     * {@link #CACHED_LOCATION_REUSE_METERS} and still has forecast rows from today onwards,
+     * otherwise null.
+     */
+    private CachedLocation findCachedLocationNear(double latitude, double longitude) {
+        Cursor locationCursor = getContentResolver().query(
+                WeatherContract.LocationEntry.buildNearestLocationUri(latitude, longitude, 1),
+                NEARBY_LOCATION_COLUMNS,
+                null,
+                null,
+                null);
+        if (locationCursor == null) {
+            return null;
+        }
+
+        CachedLocation location = null;
+        try {
+            if (locationCursor.moveToFirst()) {
+                float[] distance = new float[1];
+                double cachedLatitude = locationCursor.getDouble(COL_COORD_LAT);
+                double cachedLongitude = locationCursor.getDouble(COL_COORD_LONG);
+                Location.distanceBetween(latitude, longitude, cachedLatitude, cachedLongitude,
+                        distance);
+                if (distance[0] <= CACHED_LOCATION_REUSE_METERS) {
+                    location = new CachedLocation(locationCursor.getString(COL_LOCATION_SETTING),
+                            cachedLatitude, cachedLongitude);
+                }
+            }
+        } finally {
+            locationCursor.close();
+        }
+        if (location == null) {
+            return null;
+        }
+
+        Cursor weatherCursor = getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        location.locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                        WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        if (weatherCursor == null) {
+            return null;
+        }
+        try {
+            return weatherCursor.getCount() > 0 ? location : null;
+        } finally {
+            weatherCursor.close();
+        }
+    }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+import com.example.android.sunshine.common.WearForecast;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Formats the date labels and temperatures shown by the list, the detail pane, the widgets and
+ * the notification, and remembers what it has formatted.
+ *
+ * Date labels only depend on the local day being labelled, today's date and the locale, so they
+ * are cached by julian day and thrown away when the day rolls over, the locale changes or the
+ * timezone changes ({@link ClockChangedReceiver} calls {@link #invalidate()}).  Temperatures are
+ * cached by the whole number of degrees actually displayed, separately for each unit.
+ *
+ * Every method is synchronized; the formatters are shared between the UI thread, loaders and
+ * the widget services.  Use it through the Utility methods.
+ */
+public final class SunshineFormatter {
+
+    // Julian day the cached labels were built on, and the locale they were built for
+    private static int sToday;
+    private static Locale sLocale;
+
+    private static SimpleDateFormat sShortenedDateFormat;
+    private static SimpleDateFormat sDayFormat;
+    private static SimpleDateFormat sMonthDayFormat;
+
+    private static final SparseArray<String> sFriendlyDays = new SparseArray<String>();
+    private static final SparseArray<String> sLongFriendlyDays = new SparseArray<String>();
+    private static final SparseArray<String> sFullFriendlyDays = new SparseArray<String>();
+    private static final SparseArray<String> sDayNames = new SparseArray<String>();
+    private static final SparseArray<String> sMonthDays = new SparseArray<String>();
+
+    private static final SparseArray<String> sMetricTemperatures = new SparseArray<String>();
+    private static final SparseArray<String> sImperialTemperatures = new SparseArray<String>();
+    // "%1.0f" turns anything between -0.5 and 0 into "-0"; keep doing so
+    private static String sMetricNegativeZero;
+    private static String sImperialNegativeZero;
+
+    private SunshineFormatter() {
+    }
+
+    /**
+     * Drops every cached label.  Called when the timezone or locale changes.
+     */
+    public static synchronized void invalidate() {
+        sLocale = null;
+    }
+
+    private static void clearCaches() {
+        sShortenedDateFormat = null;
+        sDayFormat = null;
+        sMonthDayFormat = null;
+        sFriendlyDays.clear();
+        sLongFriendlyDays.clear();
+        sFullFriendlyDays.clear();
+        sDayNames.clear();
+        sMonthDays.clear();
+        sMetricTemperatures.clear();
+        sImperialTemperatures.clear();
+        sMetricNegativeZero = null;
+        sImperialNegativeZero = null;
+    }
+
+    // Returns today's julian day, first emptying the caches if they are stale
+    private static int checkCaches() {
+        int today = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
+        // Locale.getDefault() hands back the same instance until the locale changes
+        Locale locale = Locale.getDefault();
+        if (locale != sLocale) {
+            clearCaches();
+            sLocale = locale;
+            sToday = today;
+        } else if (today != sToday) {
+            // "Today" and "Tomorrow" have moved on; temperatures are still good
+            sFriendlyDays.clear();
+            sLongFriendlyDays.clear();
+            sFullFriendlyDays.clear();
+            sDayNames.clear();
+            sToday = today;
+        }
+        return today;
+    }
+
+    /**
+     * See {@link Utility#formatTemperature(Context, double)}.
+     */
+    public static synchronized String formatTemperature(Context context, double temperature) {
+        checkCaches();
+
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        boolean metric = SunshineSettings.get(context).metric;
+        if (!metric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+
+        // For presentation, assume the user doesn't care about tenths of a degree.  The watch
+        // face rounds the raw temperatures it is sent with the same function.
+        int degrees = WearForecast.roundDegrees(temperature);
+
+        if (degrees == 0 && temperature < 0) {
+            if (metric) {
+                if (sMetricNegativeZero == null) {
+                    sMetricNegativeZero = format(context, temperature);
+                }
+                return sMetricNegativeZero;
+            } else {
+                if (sImperialNegativeZero == null) {
+                    sImperialNegativeZero = format(context, temperature);
+                }
+                return sImperialNegativeZero;
+            }
+        }
+
+        SparseArray<String> temperatures = metric ? sMetricTemperatures : sImperialTemperatures;
+        String formatted = temperatures.get(degrees);
+        if (formatted == null) {
+            formatted = format(context, degrees);
+            temperatures.put(degrees, formatted);
+        }
+        return formatted;
+    }
+
+    private static String format(Context context, double temperature) {
+        return String.format(context.getString(R.string.format_temperature), temperature);
+    }
+
+    /**
+     * See {@link Utility#getFriendlyDayString(Context, long, boolean)}.
+     */
+    public static synchronized String getFriendlyDayString(Context context, long dateInMillis,
+                                                           boolean displayLongToday) {
+        int currentJulianDay = checkCaches();
+        int julianDay = SunshineDateUtils.getJulianDay(dateInMillis);
+
+        // The long form only differs for today
+        boolean longToday = displayLongToday && julianDay == currentJulianDay;
+        SparseArray<String> labels = longToday ? sLongFriendlyDays : sFriendlyDays;
+        String label = labels.get(julianDay);
+        if (label != null) {
+            return label;
+        }
+
+        // The day string for forecast uses the following logic:
+        // For today: "Today, June 8"
+        // For tomorrow:  "Tomorrow"
+        // For the next 5 days: "Wednesday" (just the day name)
+        // For all days after that: "Mon Jun 8"
+        if (longToday) {
+            // If the date we're building the String for is today's date, the format
+            // is "Today, June 24"
+            label = context.getString(R.string.format_full_friendly_date,
+                    context.getString(R.string.today),
+                    getFormattedMonthDay(context, dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            // If the input date is less than a week in the future, just return the day name.
+            label = getDayName(context, dateInMillis);
+        } else {
+            // Otherwise, use the form "Mon Jun 3"
+            if (sShortenedDateFormat == null) {
+                sShortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            }
+            label = sShortenedDateFormat.format(dateInMillis);
+        }
+        labels.put(julianDay, label);
+        return label;
+    }
+
+    /**
+     * See {@link Utility#getFullFriendlyDayString(Context, long)}.
+     */
+    public static synchronized String getFullFriendlyDayString(Context context, long dateInMillis) {
+        checkCaches();
+        int julianDay = SunshineDateUtils.getJulianDay(dateInMillis);
+        String label = sFullFriendlyDays.get(julianDay);
+        if (label == null) {
+            label = context.getString(R.string.format_full_friendly_date,
+                    getDayName(context, dateInMillis),
+                    getFormattedMonthDay(context, dateInMillis));
+            sFullFriendlyDays.put(julianDay, label);
+        }
+        return label;
+    }
+
+    /**
+     * See {@link Utility#getDayName(Context, long)}.
+     */
+    public static synchronized String getDayName(Context context, long dateInMillis) {
+        int currentJulianDay = checkCaches();
+        int julianDay = SunshineDateUtils.getJulianDay(dateInMillis);
+        String label = sDayNames.get(julianDay);
+        if (label != null) {
+            return label;
+        }
+
+        // If the date is today, return the localized version of "Today" instead of the actual
+        // day name.
+        if (julianDay == currentJulianDay) {
+            label = context.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            label = context.getString(R.string.tomorrow);
+        } else {
+            // Otherwise, the format is just the day of the week (e.g "Wednesday".
+            if (sDayFormat == null) {
+                sDayFormat = new SimpleDateFormat("EEEE");
+            }
+            label = sDayFormat.format(dateInMillis);
+        }
+        sDayNames.put(julianDay, label);
+        return label;
+    }
+
+    /**
+     * See {@link Utility#getFormattedMonthDay(Context, long)}.
+     */
+    public static synchronized String getFormattedMonthDay(Context context, long dateInMillis) {
+        checkCaches();
+        int julianDay = SunshineDateUtils.getJulianDay(dateInMillis);
+        String label = sMonthDays.get(julianDay);
+        if (label == null) {
+            if (sMonthDayFormat == null) {
+                sMonthDayFormat = new SimpleDateFormat("MMMM dd");
+            }
+            label = sMonthDayFormat.format(dateInMillis);
+            sMonthDays.put(julianDay, label);
+        }
+        return label;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.alerts.AlertRules;
+import com.example.android.sunshine.app.art.WeatherArt;
+import com.example.android.sunshine.common.WeatherConditions;
+
+/**
+ * An immutable snapshot of the user's settings, shared by the whole process.
+ *
+ * The snapshot is read once from the default SharedPreferences and rebuilt by a single
+ * {@link SharedPreferences.OnSharedPreferenceChangeListener} whenever one of the settings it
+ * holds changes, so the list, widgets, sync and notifications can read settings with plain field
+ * access.  SharedPreferences calls the listener synchronously when a change is committed from the
+ * main thread, which is where every settings screen writes from.
+ *
+ * Values written by the app itself rather than the user (the location status and the time of
+ * the last notification) change often and are not part of the snapshot; keep reading those from
+ * SharedPreferences.
+ */
+public final class SunshineSettings {
+
+    public final String locationSetting;
+    public final boolean metric;
+    // Format string for the art pack URLs, with a %s for the art name
+    public final String artPackUrlFormat;
+    public final boolean useLocalGraphics;
+    public final boolean locationLatLonAvailable;
+    public final float locationLatitude;
+    public final float locationLongitude;
+    public final boolean notificationsEnabled;
+    // The user's weather alert rules, compiled once per snapshot
+    public final AlertRules alertRules;
+
+    // Art pack image for each WeatherConditions condition, built once per snapshot
+    private final WeatherArt[] mArt = new WeatherArt[WeatherConditions.CONDITION_COUNT];
+
+    private static volatile SunshineSettings sSettings;
+
+    // SharedPreferences only keeps weak references to its listeners, so hold on to ours
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private SunshineSettings(Context context, SharedPreferences prefs) {
+        locationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPackUrlFormat = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        useLocalGraphics = artPackUrlFormat.equals(sunshineArtPack);
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            if (condition != WeatherConditions.UNKNOWN) {
+                mArt[condition] = new WeatherArt(artPackUrlFormat, condition);
+            }
+        }
+
+        String latitudeKey = context.getString(R.string.pref_location_latitude);
+        String longitudeKey = context.getString(R.string.pref_location_longitude);
+        locationLatLonAvailable = prefs.contains(latitudeKey) && prefs.contains(longitudeKey);
+        locationLatitude = prefs.getFloat(latitudeKey, Utility.DEFAULT_LATLONG);
+        locationLongitude = prefs.getFloat(longitudeKey, Utility.DEFAULT_LATLONG);
+
+        notificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+
+        alertRules = AlertRules.compile(
+                prefs.getString(context.getString(R.string.pref_alert_rules_key), ""));
+    }
+
+    /**
+     * Returns the current settings.  Cheap enough to call for every row of every list.
+     */
+    public static SunshineSettings get(Context context) {
+        SunshineSettings settings = sSettings;
+        if (settings == null) {
+            settings = load(context.getApplicationContext());
+        }
+        return settings;
+    }
+
+    /**
+     * @param condition value returned by {@link WeatherConditions#getCondition(int)}
+     * @return the art pack image for the condition, or null if there is no art for it.
+     */
+    public WeatherArt getArt(int condition) {
+        return mArt[condition];
+    }
+
+    private static synchronized SunshineSettings load(final Context appContext) {
+        if (sSettings != null) {
+            return sSettings;
+        }
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        if (sListener == null) {
+            final String locationStatusKey = appContext.getString(R.string.pref_location_status_key);
+            final String lastNotificationKey = appContext.getString(R.string.pref_last_notification);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    if (locationStatusKey.equals(key) || lastNotificationKey.equals(key)) {
+                        return;
+                    }
+                    rebuild(appContext, sharedPreferences);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+        }
+        SunshineSettings settings = new SunshineSettings(appContext, prefs);
+        sSettings = settings;
+        return settings;
+    }
+
+    private static synchronized void rebuild(Context appContext, SharedPreferences prefs) {
+        sSettings = new SunshineSettings(appContext, prefs);
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.alerts;
+
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The user's weather alert rules, compiled into lookup tables that a forecast row can be
+ * checked against without trying each rule in turn.
+ *
+ * Rules are written one per line (or separated by semicolons), in one of three forms:
+ * <ul>
+ * <li>{@code max > 35}: a row's max, min, humidity, pressure or wind above or below a value.
+ * Temperatures are in Celsius and pressure in hPa, as stored.</li>
+ * <li>{@code weather 2xx}: a weather id in a hundreds group; 2xx is thunderstorms.</li>
+ * <li>{@code pressure drop > 10}: pressure falling by more than that many hPa from the day
+ * before.  Only days whose previous day is in the same batch can be checked.</li>
+ * </ul>
+ * Any rule can end with {@code within 48h}, limiting it to the days that start within that
+ * many hours of today.  Rules that don't parse are logged and left out.
+ *
+ * Threshold rules are kept sorted per value and direction, so the rules a row matches are a
+ * run found by binary search, and weather rules are indexed by group.  Checking a row costs
+ * the same for any number of locations, grows only logarithmically with the number of rules,
+ * and allocates nothing beyond what the listener does for each hit.  Instances are immutable.
+ */
+public final class AlertRules {
+    private static final String LOG_TAG = AlertRules.class.getSimpleName();
+
+    public interface OnHitListener {
+        /**
+         * Called for each rule a forecast row matches.
+         *
+         * @param rule index of the rule, see {@link #getRule(int)}
+         */
+        void onHit(int rule, long locationId, int julianDay);
+    }
+
+    // Values a threshold rule can test, in the order of FIELD_NAMES
+    private static final int MAX = 0;
+    private static final int MIN = 1;
+    private static final int HUMIDITY = 2;
+    private static final int PRESSURE = 3;
+    private static final int WIND = 4;
+    private static final int PRESSURE_DROP = 5;
+    private static final int FIELD_COUNT = 6;
+
+    private static final List<String> FIELD_NAMES =
+            Arrays.asList("max", "min", "humidity", "pressure", "wind");
+
+    private static final int WEATHER_GROUPS = 10;
+
+    private static final Pattern SEPARATOR = Pattern.compile("[;\\n]");
+    private static final Pattern WITHIN = Pattern.compile("(.*?)\\s+within\\s+(\\d{1,4})\\s*h");
+    private static final Pattern THRESHOLD = Pattern.compile(
+            "(max|min|humidity|pressure|wind)\\s*([<>])\\s*(-?\\d+(?:\\.\\d+)?)"
+                    + "\\s*(?:\u00B0?c|%|hpa|m/s)?");
+    private static final Pattern WEATHER = Pattern.compile("weather(?:\\s*id)?\\s+(\\d)xx");
+    private static final Pattern DROP = Pattern.compile(
+            "pressure\\s+drop\\s*>\\s*(\\d+(?:\\.\\d+)?)\\s*(?:hpa)?(?:\\s*/\\s*day)?");
+
+    private static final double[] NO_THRESHOLDS = new double[0];
+    private static final int[] NO_RULES = new int[0];
+
+    private static final AlertRules EMPTY = new AlertRules(Collections.<String>emptyList(),
+            Collections.<Entry>emptyList(), Collections.<Entry>emptyList(),
+            Collections.<Entry>emptyList(), new int[0]);
+
+    private final String[] mRules;
+    // Number of days from today each rule applies to, or Integer.MAX_VALUE for all of them
+    private final int[] mDayLimits;
+
+    // Per field, the thresholds of its "above" and "below" rules in ascending order, with the
+    // rule each belongs to
+    private final double[][] mAboveThresholds = new double[FIELD_COUNT][];
+    private final int[][] mAboveRules = new int[FIELD_COUNT][];
+    private final double[][] mBelowThresholds = new double[FIELD_COUNT][];
+    private final int[][] mBelowRules = new int[FIELD_COUNT][];
+
+    // Per hundreds group of weather ids, the rules for it
+    private final int[][] mWeatherRules = new int[WEATHER_GROUPS][];
+
+    // One compiled condition, while compiling
+    private static final class Entry implements Comparable<Entry> {
+        final int key;
+        final double threshold;
+        final int rule;
+
+        Entry(int key, double threshold, int rule) {
+            this.key = key;
+            this.threshold = threshold;
+            this.rule = rule;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Double.compare(threshold, other.threshold);
+        }
+    }
+
+    private AlertRules(List<String> rules, List<Entry> above, List<Entry> below,
+                       List<Entry> weather, int[] dayLimits) {
+        mRules = rules.toArray(new String[rules.size()]);
+        mDayLimits = dayLimits;
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            mAboveThresholds[field] = thresholds(above, field);
+            mAboveRules[field] = rules(above, field);
+            mBelowThresholds[field] = thresholds(below, field);
+            mBelowRules[field] = rules(below, field);
+        }
+        for (int group = 0; group < WEATHER_GROUPS; group++) {
+            mWeatherRules[group] = rules(weather, group);
+        }
+    }
+
+    // The entries are sorted, so these come out in ascending order of threshold
+    private static double[] thresholds(List<Entry> entries, int key) {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.key == key) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return NO_THRESHOLDS;
+        }
+        double[] thresholds = new double[count];
+        int i = 0;
+        for (Entry entry : entries) {
+            if (entry.key == key) {
+                thresholds[i++] = entry.threshold;
+            }
+        }
+        return thresholds;
+    }
+
+    private static int[] rules(List<Entry> entries, int key) {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.key == key) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return NO_RULES;
+        }
+        int[] rules = new int[count];
+        int i = 0;
+        for (Entry entry : entries) {
+            if (entry.key == key) {
+                rules[i++] = entry.rule;
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Parses rules written as described above.
+     *
+     * @param text the rules, or null for none
+     */
+    public static AlertRules compile(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return EMPTY;
+        }
+
+        List<String> rules = new ArrayList<String>();
+        List<Integer> dayLimits = new ArrayList<Integer>();
+        List<Entry> above = new ArrayList<Entry>();
+        List<Entry> below = new ArrayList<Entry>();
+        List<Entry> weather = new ArrayList<Entry>();
+        for (String rule : SEPARATOR.split(text)) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            String condition = rule.toLowerCase(Locale.US);
+            int dayLimit = Integer.MAX_VALUE;
+            Matcher within = WITHIN.matcher(condition);
+            if (within.matches()) {
+                condition = within.group(1);
+                // A day counts if it starts before the window ends
+                dayLimit = (Integer.parseInt(within.group(2)) + 23) / 24;
+            }
+
+            int index = rules.size();
+            Matcher matcher;
+            if ((matcher = DROP.matcher(condition)).matches()) {
+                above.add(new Entry(PRESSURE_DROP, Double.parseDouble(matcher.group(1)), index));
+            } else if ((matcher = THRESHOLD.matcher(condition)).matches()) {
+                Entry entry = new Entry(FIELD_NAMES.indexOf(matcher.group(1)),
+                        Double.parseDouble(matcher.group(3)), index);
+                if (matcher.group(2).equals(">")) {
+                    above.add(entry);
+                } else {
+                    below.add(entry);
+                }
+            } else if ((matcher = WEATHER.matcher(condition)).matches()) {
+                weather.add(new Entry(Integer.parseInt(matcher.group(1)), 0, index));
+            } else {
+                Log.w(LOG_TAG, "Ignoring alert rule \"" + rule + "\"");
+                continue;
+            }
+            rules.add(rule);
+            dayLimits.add(dayLimit);
+        }
+
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+        Collections.sort(above);
+        Collections.sort(below);
+        int[] limits = new int[dayLimits.size()];
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = dayLimits.get(i);
+        }
+        return new AlertRules(rules, above, below, weather, limits);
+    }
+
+    public int size() {
+        return mRules.length;
+    }
+
+    /**
+     * @return the rule as the user wrote it.
+     */
+    public String getRule(int rule) {
+        return mRules[rule];
+    }
+
+    /**
+     * Checks every row of the batch from today on against the rules, once each.  Rows for a
+     * location are expected in date order, as the sync writes them, for pressure drops to be
+     * found.
+     */
+    public void evaluate(ForecastBatch batch, int today, OnHitListener listener) {
+        if (mRules.length == 0) {
+            return;
+        }
+        long previousLocation = -1;
+        int previousDay = 0;
+        double previousPressure = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            long locationId = batch.getLocationId(i);
+            int julianDay = SunshineDateUtils.getJulianDay(batch.getDate(i));
+            double pressure = batch.getPressure(i);
+            int offset = julianDay - today;
+            if (offset >= 0) {
+                check(MAX, batch.getMaxTemp(i), offset, locationId, julianDay, listener);
+                check(MIN, batch.getMinTemp(i), offset, locationId, julianDay, listener);
+                check(HUMIDITY, batch.getHumidity(i), offset, locationId, julianDay, listener);
+                check(PRESSURE, pressure, offset, locationId, julianDay, listener);
+                check(WIND, batch.getWindSpeed(i), offset, locationId, julianDay, listener);
+                if (locationId == previousLocation && julianDay == previousDay + 1) {
+                    check(PRESSURE_DROP, previousPressure - pressure, offset, locationId,
+                            julianDay, listener);
+                }
+                int group = batch.getWeatherId(i) / 100;
+                if (group >= 0 && group < WEATHER_GROUPS) {
+                    int[] rules = mWeatherRules[group];
+                    for (int rule : rules) {
+                        hit(rule, offset, locationId, julianDay, listener);
+                    }
+                }
+            }
+            previousLocation = locationId;
+            previousDay = julianDay;
+            previousPressure = pressure;
+        }
+    }
+
+    private void check(int field, double value, int offset, long locationId, int julianDay,
+                       OnHitListener listener) {
+        // Rules for "above" match when their threshold is below the value: a leading run
+        double[] thresholds = mAboveThresholds[field];
+        int[] rules = mAboveRules[field];
+        int end = countBelow(thresholds, value, false);
+        for (int i = 0; i < end; i++) {
+            hit(rules[i], offset, locationId, julianDay, listener);
+        }
+
+        // and rules for "below" when it is above the value: a trailing run
+        thresholds = mBelowThresholds[field];
+        rules = mBelowRules[field];
+        for (int i = countBelow(thresholds, value, true); i < thresholds.length; i++) {
+            hit(rules[i], offset, locationId, julianDay, listener);
+        }
+    }
+
+    /**
+     * @return how many of the ascending thresholds are below the value, or equal to it too if
+     * inclusive is set.
+     */
+    private static int countBelow(double[] thresholds, double value, boolean inclusive) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (thresholds[mid] < value || (inclusive && thresholds[mid] == value)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void hit(int rule, int offset, long locationId, int julianDay,
+                     OnHitListener listener) {
+        if (offset < mDayLimits[rule]) {
+            listener.onHit(rule, locationId, julianDay);
+        }
+    }
+}
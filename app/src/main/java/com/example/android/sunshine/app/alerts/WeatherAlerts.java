@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.alerts;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineSettings;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks newly written forecast rows against the user's {@link AlertRules} and posts a
+ * notification for the rules they match, unless the user has turned notifications off.
+ *
+ * A rule matching the same day at the same location is only notified once, however many
+ * syncs write that day again.  The hits already notified are kept in a small file, and
+ * forgotten once their day has passed.
+ */
+public final class WeatherAlerts {
+    private static final String LOG_TAG = WeatherAlerts.class.getSimpleName();
+
+    private static final int ALERT_NOTIFICATION_ID = 3005;
+
+    private static final String NOTIFIED_FILE = "alert_hits";
+
+    // Keys of the hits already notified, see key(); loaded from sNotifiedFile the first time
+    // they are needed
+    private static File sNotifiedFile;
+    private static Set<String> sNotified;
+
+    private WeatherAlerts() {
+    }
+
+    /**
+     * Call with each batch after it has been written to the database.  Must not be called on
+     * the main thread.
+     */
+    public static void check(Context context, ForecastBatch batch) {
+        SunshineSettings settings = SunshineSettings.get(context);
+        // Alerts are notifications like the daily forecast, so the same setting turns them off
+        final AlertRules rules = settings.alertRules;
+        if (!settings.notificationsEnabled || rules.size() == 0 || batch.size() == 0) {
+            return;
+        }
+
+        final Context appContext = context.getApplicationContext();
+        final int today = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
+        final List<String> keys = new ArrayList<String>();
+        final List<String> lines = new ArrayList<String>();
+        rules.evaluate(batch, today, new AlertRules.OnHitListener() {
+            @Override
+            public void onHit(int rule, long locationId, int julianDay) {
+                keys.add(key(julianDay, locationId, rules.getRule(rule)));
+                String day = Utility.getFriendlyDayString(appContext,
+                        SunshineDateUtils.getStartOfJulianDay(julianDay), false);
+                lines.add(appContext.getString(R.string.format_alert_hit, day,
+                        rules.getRule(rule)));
+            }
+        });
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        boolean[] fresh = markNotified(new File(appContext.getFilesDir(), NOTIFIED_FILE), today,
+                keys);
+        List<String> freshLines = new ArrayList<String>();
+        for (int i = 0; i < fresh.length; i++) {
+            if (fresh[i]) {
+                freshLines.add(lines.get(i));
+            }
+        }
+        Log.d(LOG_TAG, keys.size() + " alert hits, " + freshLines.size() + " new");
+        if (!freshLines.isEmpty()) {
+            notify(appContext, freshLines);
+        }
+    }
+
+    // The julian day comes first, so passed days can be pruned without parsing the rest
+    static String key(int julianDay, long locationId, String rule) {
+        return julianDay + ":" + locationId + ":" + rule;
+    }
+
+    /**
+     * Records the hits as notified in notifiedFile, and forgets those from before today.
+     *
+     * @return for each key, whether it had not been notified before
+     */
+    static synchronized boolean[] markNotified(File notifiedFile, int today, List<String> keys) {
+        AtomicFile file = new AtomicFile(notifiedFile);
+        if (sNotified == null || !notifiedFile.equals(sNotifiedFile)) {
+            sNotifiedFile = notifiedFile;
+            sNotified = new HashSet<String>();
+            try {
+                String notified = new String(file.readFully(), "UTF-8");
+                for (String key : notified.split("\n")) {
+                    if (!key.isEmpty()) {
+                        sNotified.add(key);
+                    }
+                }
+            } catch (FileNotFoundException e) {
+                // Nothing notified yet
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error reading notified alerts", e);
+            }
+        }
+
+        boolean changed = false;
+        for (Iterator<String> it = sNotified.iterator(); it.hasNext(); ) {
+            String key = it.next();
+            int julianDay;
+            try {
+                julianDay = Integer.parseInt(key.substring(0, key.indexOf(':')));
+            } catch (RuntimeException e) {
+                julianDay = 0;
+            }
+            if (julianDay < today) {
+                it.remove();
+                changed = true;
+            }
+        }
+
+        boolean[] fresh = new boolean[keys.size()];
+        for (int i = 0; i < fresh.length; i++) {
+            fresh[i] = sNotified.add(keys.get(i));
+            changed |= fresh[i];
+        }
+
+        if (changed) {
+            StringBuilder notified = new StringBuilder();
+            for (String key : sNotified) {
+                notified.append(key).append('\n');
+            }
+            FileOutputStream out = null;
+            try {
+                out = file.startWrite();
+                out.write(notified.toString().getBytes("UTF-8"));
+                file.finishWrite(out);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error saving notified alerts", e);
+                if (out != null) {
+                    file.failWrite(out);
+                }
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Forgets every hit recorded in notifiedFile.
+     */
+    static synchronized void clearNotified(File notifiedFile) {
+        new AtomicFile(notifiedFile).delete();
+        if (notifiedFile.equals(sNotifiedFile)) {
+            sNotified = null;
+        }
+    }
+
+    private static void notify(Context context, List<String> lines) {
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        for (String line : lines) {
+            style.addLine(line);
+        }
+        PendingIntent contentIntent =
+                PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class), 0);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setColor(context.getResources().getColor(R.color.primary_light))
+                .setSmallIcon(R.drawable.ic_storm)
+                .setContentTitle(context.getString(R.string.alert_title))
+                .setContentText(lines.get(0))
+                .setNumber(lines.size())
+                .setStyle(style)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true)
+                .setContentIntent(contentIntent);
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify(ALERT_NOTIFICATION_ID, builder.build());
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import com.example.android.sunshine.app.R;
+
+/**
+ * Process-wide cache of the app's own art_* and ic_* drawables, decoded at the size each
+ * consumer draws them at.  It also keeps copies of art pack images that have been loaded at a
+ * given size, so they can be used again without waiting on Glide.
+ *
+ * Bitmaps are keyed by resource, size and config, and decoded with inSampleSize so a 48dp
+ * notification icon never has the full xxhdpi art decoded for it.  The cache is sized from the
+ * memory class of the device and gives its memory back when the system asks for it.
+ *
+ * Bitmaps handed out are shared: never recycle or modify them.
+ */
+public class BitmapCache {
+
+    // Share of the app's memory class the cache may use
+    private static final int MEMORY_CLASS_DIVISOR = 32;
+
+    private static BitmapCache sInstance;
+
+    private final Resources mResources;
+    private final LruCache<Key, Bitmap> mCache;
+
+    /**
+     * Returns the cache, creating it the first time it is needed.
+     */
+    public static synchronized BitmapCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new BitmapCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private BitmapCache(Context appContext) {
+        mResources = appContext.getResources();
+
+        ActivityManager activityManager =
+                (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+        int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+        mCache = new LruCache<Key, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getRowBytes() * value.getHeight();
+            }
+        };
+
+        // onTrimMemory only exists from ICS; before that the cache just stays within its size
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            registerTrimCallbacks(appContext);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private void registerTrimCallbacks(Context appContext) {
+        appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                mCache.evictAll();
+            }
+        });
+    }
+
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mCache.trimToSize(mCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Returns a drawable resource sized for a notification's large icon.
+     */
+    @SuppressLint("InlinedApi")
+    public Bitmap getNotificationLargeIcon(int resId) {
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        int width = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? mResources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : mResources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        int height = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? mResources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : mResources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        return getBitmap(resId, width, height);
+    }
+
+    /**
+     * Same as {@link #getBitmap(int, int, int, Bitmap.Config)} with ARGB_8888.
+     */
+    public Bitmap getBitmap(int resId, int width, int height) {
+        return getBitmap(resId, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Returns a drawable resource scaled to fit within width x height, keeping its aspect ratio.
+     * Safe to call from any thread; a miss decodes on the calling thread.
+     *
+     * @param resId a bitmap drawable resource
+     * @param width the width it will be drawn at, in pixels
+     * @param height the height it will be drawn at, in pixels
+     * @param config the config to decode to
+     * @return the bitmap, or null if the resource could not be decoded
+     */
+    public Bitmap getBitmap(int resId, int width, int height, Bitmap.Config config) {
+        Key key = new Key(resId, null, width, height, config);
+        Bitmap bitmap = mCache.get(key);
+        if (bitmap == null) {
+            // Two threads may both decode on a miss; the second put just replaces the first
+            bitmap = decode(resId, width, height, config);
+            if (bitmap != null) {
+                mCache.put(key, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns an art pack image previously stored with {@link #putArt}, or null.
+     */
+    public Bitmap getArt(WeatherArt art, int width, int height) {
+        return mCache.get(new Key(0, art, width, height, Bitmap.Config.ARGB_8888));
+    }
+
+    /**
+     * Keeps a copy of an art pack image loaded at the given size.  The bitmap is copied, since
+     * Glide recycles the bitmaps it hands out once their target is cleared.
+     *
+     * @return the copy now held by the cache, or null if it could not be made
+     */
+    public Bitmap putArt(WeatherArt art, int width, int height, Bitmap bitmap) {
+        Bitmap copy = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        if (copy != null) {
+            mCache.put(new Key(0, art, width, height, Bitmap.Config.ARGB_8888), copy);
+        }
+        return copy;
+    }
+
+    private Bitmap decode(int resId, int width, int height, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // Work in the pixels of the file picked for this density; we scale to the target below
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = config;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                width, height);
+        Bitmap sampled = BitmapFactory.decodeResource(mResources, resId, options);
+        if (sampled == null) {
+            return null;
+        }
+
+        // Sampling only goes in powers of two; finish with a filtered scale to fit the target
+        float scale = Math.min((float) width / sampled.getWidth(),
+                (float) height / sampled.getHeight());
+        if (scale >= 1f) {
+            return sampled;
+        }
+        int scaledWidth = Math.max(1, Math.round(sampled.getWidth() * scale));
+        int scaledHeight = Math.max(1, Math.round(sampled.getHeight() * scale));
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, scaledWidth, scaledHeight, true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Returns the largest power of two that keeps the decoded image at least as big as the
+     * target in both dimensions.
+     */
+    static int calculateInSampleSize(int sourceWidth, int sourceHeight, int width, int height) {
+        int inSampleSize = 1;
+        while (sourceWidth / (inSampleSize * 2) >= width
+                && sourceHeight / (inSampleSize * 2) >= height) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    // Either a drawable resource, or an art pack image with resId 0
+    private static final class Key {
+        final int resId;
+        final WeatherArt art;
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+
+        Key(int resId, WeatherArt art, int width, int height, Bitmap.Config config) {
+            this.resId = resId;
+            this.art = art;
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return resId == other.resId && width == other.width && height == other.height
+                    && config == other.config
+                    && (art == null ? other.art == null : art.equals(other.art));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = resId;
+            result = 31 * result + (art == null ? 0 : art.hashCode());
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + config.hashCode();
+            return result;
+        }
+    }
+}
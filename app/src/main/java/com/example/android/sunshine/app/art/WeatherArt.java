@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.common.WeatherConditions;
+
+import java.util.Locale;
+
+/**
+ * Glide model for one image of an art pack: the pack's URL format and the weather condition
+ * the image shows.
+ *
+ * Every condition code that maps to the same condition gets the same model, so Glide's memory and
+ * disk caches, and its joining of identical in-flight loads, all work per image rather than per
+ * condition code.  Models are created once per settings snapshot and reused for every bind; get
+ * them from {@link com.example.android.sunshine.app.Utility#getArtForWeatherCondition}.
+ */
+public final class WeatherArt {
+    private static final String LOG_TAG = WeatherArt.class.getSimpleName();
+
+    public final String artPackUrlFormat;
+    public final int condition;
+    public final String url;
+
+    /**
+     * @param artPackUrlFormat art pack URL format, with a %s for the art name
+     * @param condition a {@link WeatherConditions} condition other than UNKNOWN
+     */
+    public WeatherArt(String artPackUrlFormat, int condition) {
+        this.artPackUrlFormat = artPackUrlFormat;
+        this.condition = condition;
+        url = String.format(Locale.US, artPackUrlFormat, WeatherConditions.getArtName(condition));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WeatherArt)) {
+            return false;
+        }
+        WeatherArt other = (WeatherArt) o;
+        return condition == other.condition && artPackUrlFormat.equals(other.artPackUrlFormat);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * artPackUrlFormat.hashCode() + condition;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+    /**
+     * Starts downloading every image of an art pack into Glide's disk cache, so the list and
+     * widgets don't each go to the network for them the first time they show.  Returns
+     * immediately; Glide downloads on its own threads.
+     *
+     * This fills the SOURCE cache, so loads of art must use {@link DiskCacheStrategy#ALL} to
+     * read from it; with Glide's default of RESULT they would download the image again.
+     *
+     * @param context Context to use for Glide
+     * @param artPackUrlFormat art pack URL format, with a %s for the art name
+     */
+    public static void prefetch(Context context, String artPackUrlFormat) {
+        Context appContext = context.getApplicationContext();
+        // Conditions can share an image (tornadoes use the storm art); fetch each image once
+        String[] fetched = new String[WeatherConditions.CONDITION_COUNT];
+        int fetchedCount = 0;
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            if (condition == WeatherConditions.UNKNOWN) {
+                continue;
+            }
+            WeatherArt art = new WeatherArt(artPackUrlFormat, condition);
+            if (contains(fetched, fetchedCount, art.url)) {
+                continue;
+            }
+            fetched[fetchedCount++] = art.url;
+            Log.d(LOG_TAG, "Prefetching " + art.url);
+            Glide.with(appContext)
+                    .load(art)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL);
+        }
+    }
+
+    private static boolean contains(String[] urls, int count, String url) {
+        for (int i = 0; i < count; i++) {
+            if (urls[i].equals(url)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.content.Context;
+
+import com.bumptech.glide.load.model.GenericLoaderFactory;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.stream.BaseGlideUrlLoader;
+
+import java.io.InputStream;
+
+/**
+ * Loads {@link WeatherArt} over HTTP.  The art pack images have a single size, so the URL only
+ * depends on the pack and the condition; Glide adds the target size to its own cache keys.
+ */
+public class WeatherArtLoader extends BaseGlideUrlLoader<WeatherArt> {
+
+    public WeatherArtLoader(ModelLoader<GlideUrl, InputStream> urlLoader) {
+        super(urlLoader);
+    }
+
+    @Override
+    protected String getUrl(WeatherArt model, int width, int height) {
+        return model.url;
+    }
+
+    public static class Factory implements ModelLoaderFactory<WeatherArt, InputStream> {
+        @Override
+        public ModelLoader<WeatherArt, InputStream> build(Context context,
+                                                          GenericLoaderFactory factories) {
+            return new WeatherArtLoader(factories.buildModelLoader(GlideUrl.class, InputStream.class));
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
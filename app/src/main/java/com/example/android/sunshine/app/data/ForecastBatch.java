@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+
+/**
+ * A reusable batch of weather rows kept as one primitive array per column, so that parsing a
+ * forecast and writing it to the database doesn't box every value into a ContentValues.
+ *
+ * Fill it with {@link #add}, hand it to {@link WeatherProvider#bulkInsert(android.content.Context,
+ * ForecastBatch)}, then {@link #clear()} it and use it again for the next location.  A batch is
+ * not thread safe.
+ */
+public class ForecastBatch {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize;
+
+    private long[] mLocationIds;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private String[] mShortDescs;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ForecastBatch(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    private void allocate(int capacity) {
+        mLocationIds = grow(mLocationIds, capacity);
+        mDates = grow(mDates, capacity);
+        mWeatherIds = grow(mWeatherIds, capacity);
+        mMinTemps = grow(mMinTemps, capacity);
+        mMaxTemps = grow(mMaxTemps, capacity);
+        mHumidities = grow(mHumidities, capacity);
+        mPressures = grow(mPressures, capacity);
+        mWindSpeeds = grow(mWindSpeeds, capacity);
+        mDegrees = grow(mDegrees, capacity);
+
+        String[] shortDescs = new String[capacity];
+        if (mShortDescs != null) {
+            System.arraycopy(mShortDescs, 0, shortDescs, 0, mSize);
+        }
+        mShortDescs = shortDescs;
+    }
+
+    private long[] grow(long[] array, int capacity) {
+        long[] grown = new long[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, grown, 0, mSize);
+        }
+        return grown;
+    }
+
+    private int[] grow(int[] array, int capacity) {
+        int[] grown = new int[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, grown, 0, mSize);
+        }
+        return grown;
+    }
+
+    private double[] grow(double[] array, int capacity) {
+        double[] grown = new double[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, grown, 0, mSize);
+        }
+        return grown;
+    }
+
+    /**
+     * Makes sure the batch can hold at least the given number of rows without growing.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > mDates.length) {
+            allocate(Math.max(capacity, mDates.length * 2));
+        }
+    }
+
+    /**
+     * Appends one day's forecast.  The date is stored as given; the provider normalizes it on
+     * the way into the database just as it does for ContentValues.
+     */
+    public void add(long locationId, long date, int weatherId, String shortDesc,
+                    double minTemp, double maxTemp, double humidity, double pressure,
+                    double windSpeed, double degrees) {
+        ensureCapacity(mSize + 1);
+        mLocationIds[mSize] = locationId;
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mShortDescs[mSize] = shortDesc;
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    /**
+     * Empties the batch, keeping its arrays for reuse.
+     */
+    public void clear() {
+        // Let go of the description strings; everything else is primitive.
+        for (int i = 0; i < mSize; i++) {
+            mShortDescs[i] = null;
+        }
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getLocationId(int i) {
+        return mLocationIds[i];
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public String getShortDesc(int i) {
+        return mShortDescs[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getHumidity(int i) {
+        return mHumidities[i];
+    }
+
+    public double getPressure(int i) {
+        return mPressures[i];
+    }
+
+    public double getWindSpeed(int i) {
+        return mWindSpeeds[i];
+    }
+
+    public double getDegrees(int i) {
+        return mDegrees[i];
+    }
+
+    /**
+     * Returns row i as ContentValues.  Only for callers that have to go through a
+     * ContentResolver, such as a provider running in another process.
+     */
+    public ContentValues toContentValues(int i) {
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, mLocationIds[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, mDates[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, mHumidities[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, mPressures[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, mDegrees[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, mShortDescs[i]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[i]);
+        return weatherValues;
+    }
+}
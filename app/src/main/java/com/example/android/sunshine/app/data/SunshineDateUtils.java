@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.TimeZone;
+
+/**
+ * Julian day helpers built on plain long arithmetic, used in place of
+ * {@link android.text.format.Time} wherever we normalize or compare forecast dates.
+ *
+ * Results match Time: a julian day is the local calendar day an instant falls on, and the
+ * start of a julian day is local midnight in the default timezone.  The timezone is looked up
+ * once and cached until {@link #onTimeZoneChanged()} is called, and the bounds of the most
+ * recently normalized day are remembered, so the common case of normalizing many instants on
+ * the same few days does no work beyond a range check.
+ */
+public class SunshineDateUtils {
+
+    public static final long SECOND_IN_MILLIS = 1000;
+    public static final long MINUTE_IN_MILLIS = SECOND_IN_MILLIS * 60;
+    public static final long HOUR_IN_MILLIS = MINUTE_IN_MILLIS * 60;
+    public static final long DAY_IN_MILLIS = HOUR_IN_MILLIS * 24;
+
+    // The julian day of January 1st, 1970, which is the day System.currentTimeMillis() counts from
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private static TimeZone sTimeZone;
+
+    // [sDayStart, sDayEnd) is the span of UTC millis that falls on local julian day sDay
+    private static int sDay;
+    private static long sDayStart;
+    private static long sDayEnd;
+
+    private SunshineDateUtils() {
+    }
+
+    private static TimeZone getTimeZone() {
+        if (sTimeZone == null) {
+            sTimeZone = TimeZone.getDefault();
+            sDayStart = 0;
+            sDayEnd = 0;
+        }
+        return sTimeZone;
+    }
+
+    /**
+     * Drops the cached timezone and day window.  Called when the system timezone changes.
+     */
+    public static synchronized void onTimeZoneChanged() {
+        sTimeZone = null;
+    }
+
+    /**
+     * Returns the julian day that the given instant falls on in the default timezone.
+     */
+    public static synchronized int getJulianDay(long millis) {
+        if (millis >= sDayStart && millis < sDayEnd && sTimeZone != null) {
+            return sDay;
+        }
+        return julianDay(millis, getTimeZone().getOffset(millis));
+    }
+
+    /**
+     * Returns the julian day for the given instant given a fixed offset from UTC.  This is the
+     * same as {@link android.text.format.Time#getJulianDay(long, long)}, except that the offset
+     * is in millis rather than seconds and days before 1970 round down rather than towards 0.
+     */
+    public static int julianDay(long millis, long offsetMillis) {
+        long localMillis = millis + offsetMillis;
+        long day = localMillis / DAY_IN_MILLIS;
+        if (localMillis < 0 && day * DAY_IN_MILLIS != localMillis) {
+            day--;
+        }
+        return (int) day + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * Returns local midnight at the start of the given julian day, in UTC millis.
+     */
+    public static synchronized long getStartOfJulianDay(int julianDay) {
+        if (julianDay == sDay && sDayStart < sDayEnd && sTimeZone != null) {
+            return sDayStart;
+        }
+        return startOfJulianDay(getTimeZone(), julianDay);
+    }
+
+    private static long startOfJulianDay(TimeZone timeZone, int julianDay) {
+        long utcMidnight = (long) (julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+        // The offset at UTC midnight is usually the offset at local midnight too.  When a
+        // transition lies between the two, a second lookup at the first guess settles it.
+        long guess = utcMidnight - timeZone.getOffset(utcMidnight);
+        return utcMidnight - timeZone.getOffset(guess);
+    }
+
+    /**
+     * Normalizes an instant to local midnight at the start of its day, which is how every date
+     * in the weather table is stored.
+     */
+    public static synchronized long normalizeDate(long millis) {
+        if (millis >= sDayStart && millis < sDayEnd && sTimeZone != null) {
+            return sDayStart;
+        }
+        TimeZone timeZone = getTimeZone();
+        int julianDay = julianDay(millis, timeZone.getOffset(millis));
+        long start = startOfJulianDay(timeZone, julianDay);
+        long end = startOfJulianDay(timeZone, julianDay + 1);
+        if (millis >= start && millis < end) {
+            // Only remember windows that really contain the instant; around a transition that
+            // skips local midnight the day boundaries are ambiguous and we just recompute.
+            sDay = julianDay;
+            sDayStart = start;
+            sDayEnd = end;
+        }
+        return start;
+    }
+}
@@ -19,7 +19,6 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +42,13 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_NEAREST = "nearest";
+    public static final String PATH_BOUNDS = "bounds";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the the Julian day in the local timezone.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return SunshineDateUtils.normalizeDate(startDate);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -81,9 +78,92 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Query parameters for the nearest-location and bounding-box lookups, which are backed
+        // by the spatial index in LocationIndexEntry.
+        public static final String PARAM_LAT = "lat";
+        public static final String PARAM_LONG = "lon";
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_MIN_LAT = "min_lat";
+        public static final String PARAM_MAX_LAT = "max_lat";
+        public static final String PARAM_MIN_LONG = "min_lon";
+        public static final String PARAM_MAX_LONG = "max_lon";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /*
+            Returns the saved locations closest to the given point, nearest first.
+         */
+        public static Uri buildNearestLocationUri(double lat, double lon, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAREST)
+                    .appendQueryParameter(PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LONG, Double.toString(lon))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /*
+            Returns the saved locations that lie inside the given box (bounds inclusive).
+         */
+        public static Uri buildLocationBoundsUri(double minLat, double minLon,
+                                                 double maxLat, double maxLon) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_BOUNDS)
+                    .appendQueryParameter(PARAM_MIN_LAT, Double.toString(minLat))
+                    .appendQueryParameter(PARAM_MIN_LONG, Double.toString(minLon))
+                    .appendQueryParameter(PARAM_MAX_LAT, Double.toString(maxLat))
+                    .appendQueryParameter(PARAM_MAX_LONG, Double.toString(maxLon)).build();
+        }
+
+        /*
+            Throws IllegalArgumentException, naming the parameter, if it is missing or not a
+            finite number.
+         */
+        public static double getCoordinateFromUri(Uri uri, String param) {
+            String value = uri.getQueryParameter(param);
+            if (null == value) {
+                throw new IllegalArgumentException("Missing " + param + " in uri: " + uri);
+            }
+            try {
+                double coordinate = Double.parseDouble(value);
+                if (!Double.isNaN(coordinate) && !Double.isInfinite(coordinate)) {
+                    return coordinate;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+            throw new IllegalArgumentException("Bad " + param + " in uri: " + uri);
+        }
+
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0) {
+                try {
+                    return Integer.parseInt(limitString);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad " + PARAM_LIMIT + " in uri: " + uri);
+                }
+            } else {
+                return 1;
+            }
+        }
+    }
+
+    /*
+        Inner class that defines the spatial index over the location table.  Each saved location
+        is stored as a degenerate box (min == max) keyed by the location row id, and triggers in
+        WeatherDbHelper keep it in step with the location table.
+     */
+    public static final class LocationIndexEntry {
+
+        public static final String TABLE_NAME = "location_index";
+
+        // Same value as the row id of the indexed location
+        public static final String COLUMN_ID = "_id";
+
+        public static final String COLUMN_MIN_LAT = "min_lat";
+        public static final String COLUMN_MAX_LAT = "max_lat";
+        public static final String COLUMN_MIN_LONG = "min_long";
+        public static final String COLUMN_MAX_LONG = "max_long";
     }
 
     /* Inner class that defines the table contents of the weather table */
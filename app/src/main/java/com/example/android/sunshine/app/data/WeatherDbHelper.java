@@ -17,9 +17,12 @@ package com.example.android.sunshine.app.data;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationIndexEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -27,8 +30,10 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
+
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 3;
 
     static final String DATABASE_NAME = "weather.db";
 
@@ -81,6 +86,60 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        createLocationIndex(sqLiteDatabase);
+    }
+
+    private void createLocationIndex(SQLiteDatabase sqLiteDatabase) {
+        final String indexColumns = " (" +
+                LocationIndexEntry.COLUMN_ID + ", " +
+                LocationIndexEntry.COLUMN_MIN_LAT + ", " +
+                LocationIndexEntry.COLUMN_MAX_LAT + ", " +
+                LocationIndexEntry.COLUMN_MIN_LONG + ", " +
+                LocationIndexEntry.COLUMN_MAX_LONG + ")";
+
+        try {
+            sqLiteDatabase.execSQL("CREATE VIRTUAL TABLE " + LocationIndexEntry.TABLE_NAME +
+                    " USING rtree" + indexColumns + ";");
+        } catch (SQLiteException e) {
+            // Not every platform build of SQLite ships the rtree module.  A plain table with a
+            // compound index answers the same range queries, just without the R*-tree pruning.
+            Log.w(LOG_TAG, "rtree module unavailable, falling back to a b-tree location index");
+            sqLiteDatabase.execSQL("CREATE TABLE " + LocationIndexEntry.TABLE_NAME + " (" +
+                    LocationIndexEntry.COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                    LocationIndexEntry.COLUMN_MIN_LAT + " REAL NOT NULL, " +
+                    LocationIndexEntry.COLUMN_MAX_LAT + " REAL NOT NULL, " +
+                    LocationIndexEntry.COLUMN_MIN_LONG + " REAL NOT NULL, " +
+                    LocationIndexEntry.COLUMN_MAX_LONG + " REAL NOT NULL);");
+            sqLiteDatabase.execSQL("CREATE INDEX " + LocationIndexEntry.TABLE_NAME + "_lat_long ON " +
+                    LocationIndexEntry.TABLE_NAME + " (" +
+                    LocationIndexEntry.COLUMN_MIN_LAT + ", " +
+                    LocationIndexEntry.COLUMN_MIN_LONG + ");");
+        }
+
+        // Keep the index in step with the location table, whoever writes to it
+        sqLiteDatabase.execSQL("CREATE TRIGGER " + LocationIndexEntry.TABLE_NAME + "_insert" +
+                " AFTER INSERT ON " + LocationEntry.TABLE_NAME + " BEGIN" +
+                " INSERT INTO " + LocationIndexEntry.TABLE_NAME + indexColumns + " VALUES (" +
+                "new." + LocationEntry._ID + ", " +
+                "new." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                "new." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                "new." + LocationEntry.COLUMN_COORD_LONG + ", " +
+                "new." + LocationEntry.COLUMN_COORD_LONG + "); END;");
+
+        sqLiteDatabase.execSQL("CREATE TRIGGER " + LocationIndexEntry.TABLE_NAME + "_update" +
+                " AFTER UPDATE OF " + LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + " ON " + LocationEntry.TABLE_NAME + " BEGIN" +
+                " UPDATE " + LocationIndexEntry.TABLE_NAME + " SET " +
+                LocationIndexEntry.COLUMN_MIN_LAT + " = new." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationIndexEntry.COLUMN_MAX_LAT + " = new." + LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationIndexEntry.COLUMN_MIN_LONG + " = new." + LocationEntry.COLUMN_COORD_LONG + ", " +
+                LocationIndexEntry.COLUMN_MAX_LONG + " = new." + LocationEntry.COLUMN_COORD_LONG +
+                " WHERE " + LocationIndexEntry.COLUMN_ID + " = old." + LocationEntry._ID + "; END;");
+
+        sqLiteDatabase.execSQL("CREATE TRIGGER " + LocationIndexEntry.TABLE_NAME + "_delete" +
+                " AFTER DELETE ON " + LocationEntry.TABLE_NAME + " BEGIN" +
+                " DELETE FROM " + LocationIndexEntry.TABLE_NAME +
+                " WHERE " + LocationIndexEntry.COLUMN_ID + " = old." + LocationEntry._ID + "; END;");
     }
 
     @Override
@@ -91,6 +150,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // It does NOT depend on the version number for your application.
         // If you want to update the schema without wiping data, commenting out the next 2 lines
         // should be your top priority before modifying this method.
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationIndexEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
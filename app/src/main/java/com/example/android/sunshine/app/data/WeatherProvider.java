@@ -17,12 +17,17 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderClient;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -34,6 +39,12 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAREST = 301;
+    static final int LOCATION_WITHIN_BOUNDS = 302;
+
+    // Half-width, in degrees of latitude, of the first window searched for nearby locations.
+    // The window doubles until it holds enough candidates.
+    private static final double NEAREST_INITIAL_RADIUS = 0.25;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -51,6 +62,21 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
+    //INSERT INTO weather (location_id, date, ...) VALUES (?, ?, ...)
+    private static final String sInsertWeatherStatement =
+            "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -108,6 +134,124 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    // location_index.min_lat <= maxLat AND location_index.max_lat >= minLat AND ...
+    private static String buildIndexWindow(double minLat, double minLon,
+                                           double maxLat, double maxLon) {
+        return WeatherContract.LocationIndexEntry.COLUMN_MIN_LAT + " <= " + maxLat + " AND " +
+                WeatherContract.LocationIndexEntry.COLUMN_MAX_LAT + " >= " + minLat + " AND " +
+                WeatherContract.LocationIndexEntry.COLUMN_MIN_LONG + " <= " + maxLon + " AND " +
+                WeatherContract.LocationIndexEntry.COLUMN_MAX_LONG + " >= " + minLon;
+    }
+
+    // A window of the given half-widths around a point.  Longitudes wrap at the antimeridian, so
+    // a window crossing it becomes two: one up to 180 and one from -180.
+    private static String buildWrappedIndexWindow(double lat, double lon,
+                                                  double latRadius, double lonRadius) {
+        double minLat = lat - latRadius;
+        double maxLat = lat + latRadius;
+        if (lonRadius >= 180) {
+            return buildIndexWindow(minLat, -180, maxLat, 180);
+        }
+        double minLon = lon - lonRadius;
+        double maxLon = lon + lonRadius;
+        if (minLon < -180) {
+            return "(" + buildIndexWindow(minLat, minLon + 360, maxLat, 180) + ") OR (" +
+                    buildIndexWindow(minLat, -180, maxLat, maxLon) + ")";
+        }
+        if (maxLon > 180) {
+            return "(" + buildIndexWindow(minLat, minLon, maxLat, 180) + ") OR (" +
+                    buildIndexWindow(minLat, -180, maxLat, maxLon - 360) + ")";
+        }
+        return buildIndexWindow(minLat, minLon, maxLat, maxLon);
+    }
+
+    // location._id IN (SELECT _id FROM location_index WHERE <window>)
+    private static String buildIndexedLocationSelection(String window) {
+        return WeatherContract.LocationEntry.TABLE_NAME + "." + WeatherContract.LocationEntry._ID +
+                " IN (SELECT " + WeatherContract.LocationIndexEntry.COLUMN_ID +
+                " FROM " + WeatherContract.LocationIndexEntry.TABLE_NAME +
+                " WHERE " + window + ")";
+    }
+
+    private Cursor getLocationsWithinBounds(Uri uri, String[] projection, String sortOrder) {
+        double minLat = WeatherContract.LocationEntry.getCoordinateFromUri(
+                uri, WeatherContract.LocationEntry.PARAM_MIN_LAT);
+        double minLon = WeatherContract.LocationEntry.getCoordinateFromUri(
+                uri, WeatherContract.LocationEntry.PARAM_MIN_LONG);
+        double maxLat = WeatherContract.LocationEntry.getCoordinateFromUri(
+                uri, WeatherContract.LocationEntry.PARAM_MAX_LAT);
+        double maxLon = WeatherContract.LocationEntry.getCoordinateFromUri(
+                uri, WeatherContract.LocationEntry.PARAM_MAX_LONG);
+
+        // An rtree stores 32-bit bounds rounded outwards, so the index gives us a superset of
+        // the matches; the exact check against the location row trims the edges.
+        String selection = buildIndexedLocationSelection(
+                buildIndexWindow(minLat, minLon, maxLat, maxLon)) + " AND " +
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT + " BETWEEN " + minLat + " AND " + maxLat +
+                " AND " +
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG + " BETWEEN " + minLon + " AND " + maxLon;
+
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                projection,
+                selection,
+                null,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    private Cursor getNearestLocations(Uri uri, String[] projection) {
+        double lat = WeatherContract.LocationEntry.getCoordinateFromUri(
+                uri, WeatherContract.LocationEntry.PARAM_LAT);
+        double lon = WeatherContract.LocationEntry.getCoordinateFromUri(
+                uri, WeatherContract.LocationEntry.PARAM_LONG);
+        int limit = WeatherContract.LocationEntry.getLimitFromUri(uri);
+
+        // Distances are compared on an equirectangular projection, which is plenty for picking
+        // the closest of a handful of saved cities.  Degrees of longitude shrink by cos(lat).
+        double lonScale = Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+
+        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        final String countQuery = "SELECT COUNT(*) FROM " +
+                WeatherContract.LocationIndexEntry.TABLE_NAME + " WHERE ";
+
+        // Grow a square window until it holds at least limit candidates.  Anything in a window
+        // of half-width r is at most r * sqrt(2) away, so a window widened to that radius is
+        // guaranteed to contain the true nearest limit locations.
+        double radius = NEAREST_INITIAL_RADIUS;
+        while (radius < 180 && DatabaseUtils.longForQuery(db,
+                countQuery + buildWrappedIndexWindow(lat, lon, radius, radius / lonScale),
+                null) < limit) {
+            radius *= 2;
+        }
+        radius *= Math.sqrt(2);
+
+        String selection = buildIndexedLocationSelection(
+                buildWrappedIndexWindow(lat, lon, radius, radius / lonScale));
+
+        String dLat = "(" + WeatherContract.LocationEntry.COLUMN_COORD_LAT + " - (" + lat + "))";
+        // The shorter way round: the raw difference brought into [-180, 180]
+        String rawDLon = "(" + WeatherContract.LocationEntry.COLUMN_COORD_LONG +
+                " - (" + lon + "))";
+        String dLon = "((CASE WHEN " + rawDLon + " > 180 THEN " + rawDLon + " - 360" +
+                " WHEN " + rawDLon + " < -180 THEN " + rawDLon + " + 360" +
+                " ELSE " + rawDLon + " END) * " + lonScale + ")";
+        String distanceOrder = dLat + " * " + dLat + " + " + dLon + " * " + dLon;
+
+        return db.query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                projection,
+                selection,
+                null,
+                null,
+                null,
+                distanceOrder,
+                Integer.toString(limit)
+        );
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +274,10 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_NEAREST, LOCATION_NEAREST);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_BOUNDS, LOCATION_WITHIN_BOUNDS);
         return matcher;
     }
 
@@ -163,6 +311,8 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
+            case LOCATION_NEAREST:
+            case LOCATION_WITHIN_BOUNDS:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -213,6 +363,16 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/nearest"
+            case LOCATION_NEAREST: {
+                retCursor = getNearestLocations(uri, projection);
+                break;
+            }
+            // "location/bounds"
+            case LOCATION_WITHIN_BOUNDS: {
+                retCursor = getLocationsWithinBounds(uri, projection, sortOrder);
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -342,6 +502,99 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Writes a whole batch of weather rows in one transaction through a single compiled
+     * statement, without building any ContentValues.  Notifies observers of the weather
+     * URI once at the end, as bulkInsert does.
+     *
+     * @return the number of rows written
+     */
+    public int bulkInsert(ForecastBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final int size = batch.size();
+        int returnCount = 0;
+
+        db.beginTransaction();
+        SQLiteStatement insert = db.compileStatement(sInsertWeatherStatement);
+        try {
+            for (int i = 0; i < size; i++) {
+                insert.bindLong(1, batch.getLocationId(i));
+                insert.bindLong(2, WeatherContract.normalizeDate(batch.getDate(i)));
+                insert.bindLong(3, batch.getWeatherId(i));
+                String shortDesc = batch.getShortDesc(i);
+                if (shortDesc == null) {
+                    insert.bindNull(4);
+                } else {
+                    insert.bindString(4, shortDesc);
+                }
+                insert.bindDouble(5, batch.getMinTemp(i));
+                insert.bindDouble(6, batch.getMaxTemp(i));
+                insert.bindDouble(7, batch.getHumidity(i));
+                insert.bindDouble(8, batch.getPressure(i));
+                insert.bindDouble(9, batch.getWindSpeed(i));
+                insert.bindDouble(10, batch.getDegrees(i));
+                if (insert.executeInsert() != -1) {
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+        if (size > 0) {
+            getContext().getContentResolver().notifyChange(
+                    WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+        return returnCount;
+    }
+
+    /**
+     * Writes a batch of weather rows through the provider.  When the provider lives in our own
+     * process, which is always the case for Sunshine, the batch goes straight to
+     * {@link #bulkInsert(ForecastBatch)}; otherwise, and before Honeycomb, where the local
+     * provider can't be reached, it falls back to a ContentValues bulkInsert.
+     *
+     * @return the number of rows written
+     */
+    public static int bulkInsert(Context context, ForecastBatch batch) {
+        // getLocalContentProvider only exists from Honeycomb
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            int inserted = bulkInsertLocal(context, batch);
+            if (inserted >= 0) {
+                return inserted;
+            }
+        }
+
+        ContentValues[] values = new ContentValues[batch.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = batch.toContentValues(i);
+        }
+        return context.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI, values);
+    }
+
+    /**
+     * @return the number of rows written, or -1 if the provider isn't in this process
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int bulkInsertLocal(Context context, ForecastBatch batch) {
+        ContentProviderClient client = context.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        if (client == null) {
+            return -1;
+        }
+        try {
+            ContentProvider provider = client.getLocalContentProvider();
+            if (provider instanceof WeatherProvider) {
+                return ((WeatherProvider) provider).bulkInsert(batch);
+            }
+            return -1;
+        } finally {
+            client.release();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.alerts.WeatherAlerts;
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.SunshineDateUtils;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Applies forecast changes pushed over GCM straight to the database, so a location's forecast
+ * can be corrected between syncs without fetching it.
+ *
+ * The message carries a JSON string under {@link #EXTRA_FORECAST}:
+ * <pre>
+ * {"v": 1, "location": "94043", "days": [
+ *     {"date": "2016-11-02", "weather_id": 500, "description": "light rain",
+ *      "min": 10.2, "max": 15.1, "humidity": 80, "pressure": 1012.5, "wind": 4.1, "deg": 200}
+ * ]}
+ * </pre>
+ * Each day replaces that location's row for the date, so every field is required.  Dates are
+ * calendar days, which mean the same day whatever the device's timezone.  Days before today
+ * are ignored.
+ *
+ * A payload this version can't read, one for a location that hasn't been synced yet, or one
+ * too big to be worth applying piecemeal, asks for a sync instead.  The sync manager folds
+ * identical pending requests together, so a burst of pushes costs a single sync.
+ */
+final class ForecastPush {
+    private static final String LOG_TAG = ForecastPush.class.getSimpleName();
+
+    static final String EXTRA_FORECAST = "forecast";
+
+    static final int VERSION = 1;
+
+    // Past these, a full sync is cheaper than applying the payload
+    static final int MAX_PAYLOAD_LENGTH = 2048;
+    static final int MAX_DAYS = 14;
+
+    private static final String KEY_VERSION = "v";
+    private static final String KEY_LOCATION = "location";
+    private static final String KEY_DAYS = "days";
+    private static final String KEY_DATE = "date";
+    private static final String KEY_WEATHER_ID = "weather_id";
+    private static final String KEY_DESCRIPTION = "description";
+    private static final String KEY_MIN = "min";
+    private static final String KEY_MAX = "max";
+    private static final String KEY_HUMIDITY = "humidity";
+    private static final String KEY_PRESSURE = "pressure";
+    private static final String KEY_WIND = "wind";
+    private static final String KEY_DEGREES = "deg";
+
+    private ForecastPush() {
+    }
+
+    /**
+     * Writes the days in the payload to the weather table in one transaction.  Must not be
+     * called on the main thread.
+     *
+     * @return the number of rows written, or -1 if the payload could not be applied and the
+     * forecast needs a sync instead
+     */
+    static int apply(Context context, String payload) {
+        if (payload.length() > MAX_PAYLOAD_LENGTH) {
+            Log.d(LOG_TAG, "Forecast push of " + payload.length() + " chars is too big to apply");
+            return -1;
+        }
+
+        ForecastBatch batch;
+        try {
+            JSONObject forecast = new JSONObject(payload);
+            if (forecast.optInt(KEY_VERSION) != VERSION) {
+                Log.d(LOG_TAG, "Unknown forecast push version " + forecast.opt(KEY_VERSION));
+                return -1;
+            }
+            JSONArray days = forecast.getJSONArray(KEY_DAYS);
+            if (days.length() > MAX_DAYS) {
+                Log.d(LOG_TAG, "Forecast push of " + days.length() + " days is too big to apply");
+                return -1;
+            }
+
+            long locationId = getLocationId(context, forecast.getString(KEY_LOCATION));
+            if (locationId == -1) {
+                Log.d(LOG_TAG, "Forecast push for a location that hasn't been synced");
+                return -1;
+            }
+
+            int today = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
+            batch = new ForecastBatch(days.length());
+            for (int i = 0; i < days.length(); i++) {
+                JSONObject day = days.getJSONObject(i);
+                int julianDay = parseJulianDay(day.getString(KEY_DATE));
+                if (julianDay < today) {
+                    continue;
+                }
+                batch.add(locationId, SunshineDateUtils.getStartOfJulianDay(julianDay),
+                        day.getInt(KEY_WEATHER_ID), day.getString(KEY_DESCRIPTION),
+                        day.getDouble(KEY_MIN), day.getDouble(KEY_MAX),
+                        day.getDouble(KEY_HUMIDITY), day.getDouble(KEY_PRESSURE),
+                        day.getDouble(KEY_WIND), day.getDouble(KEY_DEGREES));
+            }
+        } catch (JSONException e) {
+            Log.d(LOG_TAG, "Unreadable forecast push", e);
+            return -1;
+        }
+
+        if (batch.size() == 0) {
+            return 0;
+        }
+        int written = WeatherProvider.bulkInsert(context, batch);
+        WeatherAlerts.check(context, batch);
+        SunshineSyncAdapter.updateWeatherViews(context);
+        Log.d(LOG_TAG, "Forecast push applied, " + written + " days written");
+        return written;
+    }
+
+    /**
+     * Asks for an expedited sync.  The request is handed to the sync manager straight away,
+     * rather than held in this process, which may be killed once the push has been handled.
+     * Safe to call from any thread.
+     */
+    static void requestSync(Context context) {
+        SunshineSyncAdapter.syncImmediately(context);
+    }
+
+    /**
+     * @return the row id of the location with this setting, or -1 if there isn't one.
+     */
+    private static long getLocationId(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the julian day of a yyyy-MM-dd date.
+     *
+     * @throws JSONException if the date is not in that form, or is not a real date
+     */
+    static int parseJulianDay(String date) throws JSONException {
+        if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            throw new JSONException("Bad date " + date);
+        }
+        int year;
+        int month;
+        int day;
+        try {
+            year = Integer.parseInt(date.substring(0, 4));
+            month = Integer.parseInt(date.substring(5, 7));
+            day = Integer.parseInt(date.substring(8, 10));
+        } catch (NumberFormatException e) {
+            throw new JSONException("Bad date " + date);
+        }
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            throw new JSONException("Bad date " + date);
+        }
+
+        // The usual Gregorian calendar to julian day number conversion, with March as the
+        // first month of the year so that leap days come last
+        int a = (14 - month) / 12;
+        int y = year + 4800 - a;
+        int m = month + 12 * a - 3;
+        return day + (153 * m + 2) / 5 + 365 * y + y / 4 - y / 100 + y / 400 - 32045;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
@@ -21,7 +21,6 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
@@ -29,6 +28,7 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.art.BitmapCache;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -62,17 +62,27 @@ public class MyGcmListenerService extends GcmListenerService {
             }
             // Not a bad idea to check that the message is coming from your server.
             if ((senderId).equals(from)) {
+                // Forecast changes go straight into the database; anything we can't apply
+                // falls back to a sync
+                String forecast = data.getString(ForecastPush.EXTRA_FORECAST);
+                if (forecast != null && ForecastPush.apply(this, forecast) < 0) {
+                    ForecastPush.requestSync(this);
+                }
+
                 // Process message and then post a notification of the received message.
-                try {
-                    JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
-                    String weather = jsonObject.getString(EXTRA_WEATHER);
-                    String location = jsonObject.getString(EXTRA_LOCATION);
-                    String alert =
-                            String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
-                } catch (JSONException e) {
-                    // JSON parsing failed, so we just let this message go, since GCM is not one
-                    // of our critical features.
+                String alertData = data.getString(EXTRA_DATA);
+                if (alertData != null) {
+                    try {
+                        JSONObject jsonObject = new JSONObject(alertData);
+                        String weather = jsonObject.getString(EXTRA_WEATHER);
+                        String location = jsonObject.getString(EXTRA_LOCATION);
+                        String alert = String.format(getString(R.string.gcm_weather_alert),
+                                weather, location);
+                        sendNotification(alert);
+                    } catch (JSONException e) {
+                        // JSON parsing failed, so we just let this message go, since GCM is not
+                        // one of our critical features.
+                    }
                 }
             }
             Log.i(TAG, "Received: " + data.toString());
@@ -95,7 +105,7 @@ public class MyGcmListenerService extends GcmListenerService {
         // icon as a bitmap. So we need to create that here from the resource ID, and pass the
         // object along in our notification builder. Generally, you want to use the app icon as the
         // small icon, so that users understand what app is triggering this notification.
-        Bitmap largeIcon = BitmapFactory.decodeResource(this.getResources(), R.drawable.art_storm);
+        Bitmap largeIcon = BitmapCache.get(this).getNotificationLargeIcon(R.drawable.art_storm);
         NotificationCompat.Builder mBuilder =
                 new NotificationCompat.Builder(this)
                         .setSmallIcon(R.drawable.art_clear)
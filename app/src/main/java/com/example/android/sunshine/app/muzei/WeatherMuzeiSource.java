@@ -17,19 +17,44 @@ package com.example.android.sunshine.app.muzei;
 
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.net.Uri;
+import android.support.v4.content.FileProvider;
+import android.util.DisplayMetrics;
+import android.util.Log;
 
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.common.WeatherConditions;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
 /**
  * Muzei source that changes your background based on the current weather conditions
+ *
+ * Artwork is only published when the condition group or location changes, since Muzei reloads
+ * and crossfades the wallpaper on every publish.  Each photograph is downloaded once, scaled to
+ * the screen and kept in app storage, and Muzei reads it from there through a FileProvider.
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
+    private static final String LOG_TAG = WeatherMuzeiSource.class.getSimpleName();
+
+    // Must match the FileProvider declared in the manifest
+    private static final String ART_AUTHORITY = "com.example.android.sunshine.app.muzeiart";
+    // Must match res/xml/muzei_art_paths.xml
+    private static final String ART_DIRECTORY = "muzei";
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+    private static final int ART_JPEG_QUALITY = 90;
+
     private static final String[] FORECAST_COLUMNS = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
@@ -59,21 +84,104 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
                 location, System.currentTimeMillis());
         Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
         if (cursor.moveToFirst()) {
             int weatherId = cursor.getInt(INDEX_WEATHER_ID);
             String desc = cursor.getString(INDEX_SHORT_DESC);
 
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+            int condition = WeatherConditions.getCondition(weatherId);
+            String imageUrl = WeatherConditions.getImageUrl(condition);
             // Only publish a new wallpaper if we have a valid image
             if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+                // The token records what the current artwork shows; Muzei keeps it for us
+                String token = condition + ":" + location;
+                Artwork current = getCurrentArtwork();
+                boolean unchanged = current != null && token.equals(current.getToken());
+                if (unchanged && reason != UPDATE_REASON_INITIAL) {
+                    Log.v(LOG_TAG, "Artwork for " + location + " is unchanged, not publishing");
+                } else {
+                    Uri imageUri = getLocalImageUri(condition, imageUrl);
+                    publishArtwork(new Artwork.Builder()
+                            .imageUri(imageUri != null ? imageUri : Uri.parse(imageUrl))
+                            .token(token)
+                            .title(desc)
+                            .byline(location)
+                            .viewIntent(new Intent(this, MainActivity.class))
+                            .build());
+                }
             }
         }
         cursor.close();
     }
+
+    /**
+     * Returns a content Uri Muzei can read the photograph for the condition from, downloading
+     * and scaling it first if it is not already in app storage.
+     *
+     * @return the Uri, or null if the photograph could not be stored
+     */
+    private Uri getLocalImageUri(int condition, String imageUrl) {
+        File directory = new File(getFilesDir(), ART_DIRECTORY);
+        File file = new File(directory, "weather_" + condition + ".jpg");
+        if (!file.exists() && !downloadImage(imageUrl, directory, file)) {
+            return null;
+        }
+
+        Uri uri = FileProvider.getUriForFile(this, ART_AUTHORITY, file);
+        grantUriPermission(MUZEI_PACKAGE, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return uri;
+    }
+
+    private boolean downloadImage(String imageUrl, File directory, File file) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + directory);
+            return false;
+        }
+
+        // Muzei pans across the wallpaper, so the short side of the image only needs to cover
+        // the long side of the screen
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        int size = Math.max(metrics.widthPixels, metrics.heightPixels);
+
+        // Glide only samples down by powers of two, keeping the image at least size x size
+        FutureTarget<Bitmap> future = Glide.with(this)
+                .load(imageUrl)
+                .asBitmap()
+                .into(size, size);
+        File partial = new File(directory, file.getName() + ".tmp");
+        try {
+            Bitmap bitmap = future.get();
+            float scale = (float) size / Math.min(bitmap.getWidth(), bitmap.getHeight());
+            Bitmap scaled = bitmap;
+            if (scale < 1f) {
+                scaled = Bitmap.createScaledBitmap(bitmap,
+                        Math.round(bitmap.getWidth() * scale),
+                        Math.round(bitmap.getHeight() * scale), true);
+            }
+
+            // Write under another name, so a half-written file is never served
+            FileOutputStream out = new FileOutputStream(partial);
+            boolean written;
+            try {
+                written = scaled.compress(Bitmap.CompressFormat.JPEG, ART_JPEG_QUALITY, out);
+            } finally {
+                out.close();
+            }
+            if (scaled != bitmap) {
+                scaled.recycle();
+            }
+            if (written && partial.renameTo(file)) {
+                return true;
+            }
+            Log.e(LOG_TAG, "Couldn't write " + file);
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            Log.e(LOG_TAG, "Error storing artwork from " + imageUrl, e);
+        } finally {
+            Glide.clear(future);
+        }
+        partial.delete();
+        return false;
+    }
 }
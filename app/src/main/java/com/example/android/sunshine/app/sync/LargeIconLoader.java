@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.example.android.sunshine.app.art.BitmapCache;
+import com.example.android.sunshine.app.art.WeatherArt;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Finds the large icon for the weather notification without holding up the sync.
+ *
+ * In order, it uses a copy of the image kept from an earlier load, then whatever Glide can load
+ * within {@link #TIMEOUT_MILLIS}, and finally the local art.  Loads use DiskCacheStrategy.ALL, so
+ * an image prefetched when the art pack changed is decoded from disk in time; otherwise the load
+ * is a network fetch and may well miss the deadline.  If Glide is still loading when the deadline
+ * passes, the load keeps going and the listener hears about the image when it arrives.
+ * Tests stand in for Glide through {@link ArtLoader}.
+ */
+final class LargeIconLoader {
+    private static final String LOG_TAG = LargeIconLoader.class.getSimpleName();
+
+    // Long enough for a cached image, short enough not to notice a slow art server
+    static final long TIMEOUT_MILLIS = 2000;
+
+    interface OnLateIconListener {
+        /**
+         * Called on the main thread with the remote image, after load() has given up on it.
+         */
+        void onLateIcon(Bitmap largeIcon);
+    }
+
+    private LargeIconLoader() {
+    }
+
+    /**
+     * Where load() gets art pack images from: Glide, except in tests.
+     */
+    interface ArtLoader {
+        /**
+         * Starts loading an art pack image at the given size.
+         */
+        Future<Bitmap> start(Context appContext, WeatherArt art, int width, int height);
+
+        /**
+         * Called on the main thread once a started load has missed the deadline.  Passes the
+         * image to listener when it arrives, only for the length of the call, and then lets go
+         * of the started load.
+         */
+        void finishLate(Context appContext, WeatherArt art, int width, int height,
+                        Future<Bitmap> started, OnLateIconListener listener);
+
+        /**
+         * Lets go of a started load that has delivered its image or failed.
+         */
+        void release(Future<Bitmap> started);
+    }
+
+    private static final ArtLoader GLIDE = new ArtLoader() {
+        @Override
+        public Future<Bitmap> start(Context appContext, WeatherArt art, int width, int height) {
+            return Glide.with(appContext)
+                    .load(art)
+                    .asBitmap()
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .fitCenter()
+                    .into(width, height);
+        }
+
+        @Override
+        public void finishLate(Context appContext, final WeatherArt art, int width, int height,
+                               Future<Bitmap> started, final OnLateIconListener listener) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            // Glide joins this onto the load that is already running, then the future can let
+            // go of it
+            Glide.with(appContext)
+                    .load(art)
+                    .asBitmap()
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .fitCenter()
+                    .into(new SimpleTarget<Bitmap>(width, height) {
+                        @Override
+                        public void onResourceReady(Bitmap resource,
+                                GlideAnimation<? super Bitmap> glideAnimation) {
+                            listener.onLateIcon(resource);
+                            // Glide's bitmap goes back to its pool once the target is
+                            // cleared, which can't be done from inside its callback
+                            final SimpleTarget<Bitmap> target = this;
+                            mainHandler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    Glide.clear(target);
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onLoadFailed(Exception e, Drawable errorDrawable) {
+                            Log.e(LOG_TAG, "Error retrieving large icon from " + art, e);
+                        }
+                    });
+            release(started);
+        }
+
+        @Override
+        public void release(Future<Bitmap> started) {
+            Glide.clear((FutureTarget<Bitmap>) started);
+        }
+    };
+
+    /**
+     * Returns a large icon straight away, or after at most {@link #TIMEOUT_MILLIS}.  Must not be
+     * called on the main thread.
+     *
+     * @param art the art pack image, or null when using local graphics
+     * @param artResourceId the local art to fall back to
+     * @param listener told if the art pack image arrives after the deadline
+     */
+    static Bitmap load(Context context, WeatherArt art, int artResourceId,
+                       int width, int height, OnLateIconListener listener) {
+        return load(context, art, artResourceId, width, height, listener, GLIDE, TIMEOUT_MILLIS);
+    }
+
+    static Bitmap load(Context context, final WeatherArt art, int artResourceId,
+                       final int width, final int height, final OnLateIconListener listener,
+                       final ArtLoader loader, long timeoutMillis) {
+        final Context appContext = context.getApplicationContext();
+        final BitmapCache cache = BitmapCache.get(appContext);
+        if (art == null) {
+            return cache.getBitmap(artResourceId, width, height);
+        }
+
+        Bitmap largeIcon = cache.getArt(art, width, height);
+        if (largeIcon != null) {
+            return largeIcon;
+        }
+
+        final Future<Bitmap> future = loader.start(appContext, art, width, height);
+        try {
+            largeIcon = cache.putArt(art, width, height,
+                    future.get(timeoutMillis, TimeUnit.MILLISECONDS));
+            loader.release(future);
+        } catch (TimeoutException e) {
+            Log.d(LOG_TAG, "Large icon from " + art + " is late, using local art for now");
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    loader.finishLate(appContext, art, width, height, future,
+                            new OnLateIconListener() {
+                                @Override
+                                public void onLateIcon(Bitmap resource) {
+                                    Bitmap copy = cache.putArt(art, width, height, resource);
+                                    if (copy != null) {
+                                        listener.onLateIcon(copy);
+                                    }
+                                }
+                            });
+                }
+            });
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving large icon from " + art, e);
+            loader.release(future);
+        }
+
+        if (largeIcon == null) {
+            largeIcon = cache.getBitmap(artResourceId, width, height);
+        }
+        return largeIcon;
+    }
+}
@@ -3,6 +3,8 @@ package com.example.android.sunshine.app.sync;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
@@ -18,24 +20,28 @@ import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.service.notification.StatusBarNotification;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineSettings;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.alerts.WeatherAlerts;
+import com.example.android.sunshine.app.art.WeatherArt;
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.SunshineDateUtils;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.example.android.sunshine.app.wearService.WearService;
+import com.example.android.sunshine.app.wearService.WearChannel;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -49,8 +55,6 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
-import java.util.concurrent.ExecutionException;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -61,7 +65,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
-    private static final int WEATHER_NOTIFICATION_ID = 3004;
+    static final int WEATHER_NOTIFICATION_ID = 3004;
 
 
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
@@ -87,6 +91,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Rows parsed from the forecast, reused across syncs
+    private final ForecastBatch mForecastBatch = new ForecastBatch();
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
     }
@@ -258,8 +265,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
 
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+            // Insert the new weather information into the database.  The batch is reused from
+            // one sync to the next, so steady-state parsing allocates no per-row containers.
+            ForecastBatch batch = mForecastBatch;
+            batch.clear();
+            batch.ensureCapacity(weatherArray.length());
 
             // OWM returns daily forecasts based upon the local time of the city that is being
             // asked for, which means that we need to know the GMT offset to translate this data
@@ -269,14 +279,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // current day, we're going to take advantage of that to get a nice
             // normalized UTC date for all of our weather.
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
             // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
+            int julianStartDay = SunshineDateUtils.getJulianDay(System.currentTimeMillis());
 
             for(int i = 0; i < weatherArray.length(); i++) {
                 // These are the values that will be collected.
@@ -295,8 +299,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 // Get the JSON object representing the day
                 JSONObject dayForecast = weatherArray.getJSONObject(i);
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+                // Each day is stored as local midnight at its start
+                dateTime = SunshineDateUtils.getStartOfJulianDay(julianStartDay+i);
 
                 pressure = dayForecast.getDouble(OWM_PRESSURE);
                 humidity = dayForecast.getInt(OWM_HUMIDITY);
@@ -316,41 +320,26 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 high = temperatureObject.getDouble(OWM_MAX);
                 low = temperatureObject.getDouble(OWM_MIN);
 
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+                batch.add(locationId, dateTime, weatherId, description, low, high, humidity,
+                        pressure, windSpeed, windDirection);
             }
 
             int inserted = 0;
             // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+            if ( batch.size() > 0 ) {
+                inserted = WeatherProvider.bulkInsert(getContext(), batch);
+                WeatherAlerts.check(getContext(), batch);
 
                 // delete old data so we don't build up an endless history
                 getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+                        new String[] {Long.toString(SunshineDateUtils.getStartOfJulianDay(julianStartDay-1))});
 
-                updateWidgets();
-                updateMuzei();
+                updateWeatherViews(getContext());
                 notifyWeather();
-                upWatchFace();
 
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
+            Log.d(LOG_TAG, "Sync Complete. " + inserted + " Inserted");
             setLocationStatus(getContext(), LOCATION_STATUS_OK);
 
         } catch (JSONException e) {
@@ -359,25 +348,31 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
         }
     }
-    private void upWatchFace(){
-        Context context = getContext();
-        Intent mIntent = new Intent(context, WearService.class);
-        mIntent.setAction(WearService.ACTION_UPDATE_WATCH_FACE);
-        context.startService(mIntent);
+
+    /**
+     * Tells the widgets, Muzei and the watch face that the weather table has changed.
+     */
+    public static void updateWeatherViews(Context context) {
+        updateWidgets(context);
+        updateMuzei(context);
+        upWatchFace(context);
     }
-    private void updateWidgets() {
-        Context context = getContext();
+
+    private static void upWatchFace(Context context) {
+        WearChannel.requestUpdate(context);
+    }
+
+    private static void updateWidgets(Context context) {
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
                 .setPackage(context.getPackageName());
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
+    private static void updateMuzei(Context context) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
             context.startService(new Intent(ACTION_DATA_UPDATED)
                     .setClass(context, WeatherMuzeiSource.class));
         }
@@ -386,13 +381,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
-
-        if ( displayNotifications ) {
+        if ( SunshineSettings.get(context).notificationsEnabled ) {
 
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
             String lastNotificationKey = context.getString(R.string.pref_last_notification);
             long lastSync = prefs.getLong(lastNotificationKey, 0);
 
@@ -414,7 +405,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+                    WeatherArt art = Utility.usingLocalGraphics(context) ? null
+                            : Utility.getArtForWeatherCondition(context, weatherId);
 
                     // On Honeycomb and higher devices, we can retrieve the size of the large icon
                     // Prior to that, we use a fixed size
@@ -427,19 +419,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
                             : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
 
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
@@ -454,7 +433,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             new NotificationCompat.Builder(getContext())
                                     .setColor(resources.getColor(R.color.primary_light))
                                     .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
                                     .setContentTitle(title)
                                     .setContentText(contentText);
 
@@ -477,8 +455,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
                     NotificationManager mNotificationManager =
                             (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+                    WeatherNotification notification =
+                            new WeatherNotification(mNotificationManager, mBuilder);
+
+                    // Retrieve the large icon.  This waits a couple of seconds at most, so a slow
+                    // art server can't hold up the sync; if the art pack image turns up later the
+                    // notification is updated with it.
+                    Bitmap largeIcon = LargeIconLoader.load(context, art, artResourceId,
+                            largeIconWidth, largeIconHeight, notification);
+                    notification.post(largeIcon);
 
                     //refreshing last sync
                     SharedPreferences.Editor editor = prefs.edit();
@@ -490,6 +475,61 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    /**
+     * Posts the weather notification, and swaps in the art pack image if it arrives after the
+     * notification has gone up with the local art.
+     */
+    static class WeatherNotification implements LargeIconLoader.OnLateIconListener {
+        private final NotificationManager mNotificationManager;
+        private final NotificationCompat.Builder mBuilder;
+        private boolean mPosted;
+        private boolean mHasLateIcon;
+
+        WeatherNotification(NotificationManager notificationManager,
+                            NotificationCompat.Builder builder) {
+            mNotificationManager = notificationManager;
+            mBuilder = builder;
+        }
+
+        synchronized void post(Bitmap largeIcon) {
+            if (!mHasLateIcon) {
+                mBuilder.setLargeIcon(largeIcon);
+            }
+            // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+            show(WEATHER_NOTIFICATION_ID, mBuilder.build());
+            mPosted = true;
+        }
+
+        @Override
+        public synchronized void onLateIcon(Bitmap largeIcon) {
+            mBuilder.setLargeIcon(largeIcon).setOnlyAlertOnce(true);
+            mHasLateIcon = true;
+            if (mPosted && isShowing()) {
+                show(WEATHER_NOTIFICATION_ID, mBuilder.build());
+            }
+        }
+
+        // Overridden by tests to see what would be posted
+        void show(int id, Notification notification) {
+            mNotificationManager.notify(id, notification);
+        }
+
+        // Don't bring back a notification the user has already dismissed.  Before Marshmallow
+        // there is no way to ask, so assume it is still showing.
+        @TargetApi(Build.VERSION_CODES.M)
+        boolean isShowing() {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                return true;
+            }
+            for (StatusBarNotification notification : mNotificationManager.getActiveNotifications()) {
+                if (notification.getId() == WEATHER_NOTIFICATION_ID) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     /**
      * Helper method to handle insertion of a new location in the weather database.
      *
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearService;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WearDataLayer} backed by a GoogleApiClient for the Wearable API.
+ */
+class GmsWearDataLayer implements WearDataLayer {
+    private static final String TAG = GmsWearDataLayer.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    private static final long PUT_TIMEOUT_SECONDS = 30;
+
+    // Must match what SunshineWatchFaceService reads
+    private static final String KEY_PATH = "/weather";
+    private static final String KEY_FORECAST = "KEY_FORECAST";
+
+    private final GoogleApiClient mGoogleApiClient;
+
+    GmsWearDataLayer(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context.getApplicationContext())
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    @Override
+    public boolean connect() {
+        if (mGoogleApiClient.isConnected()) {
+            return true;
+        }
+        ConnectionResult result = mGoogleApiClient.blockingConnect(
+                CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!result.isSuccess()) {
+            Log.d(TAG, "onConnection failed: " + result);
+        }
+        return result.isSuccess();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mGoogleApiClient.isConnected();
+    }
+
+    @Override
+    public boolean putForecast(byte[] payload) {
+        PutDataMapRequest mapRequest = PutDataMapRequest.create(KEY_PATH);
+        mapRequest.getDataMap().putByteArray(KEY_FORECAST, payload);
+        Status status = Wearable.DataApi.putDataItem(mGoogleApiClient,
+                mapRequest.asPutDataRequest())
+                .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .getStatus();
+        if (!status.isSuccess()) {
+            Log.d(TAG, "Putting forecast failed: " + status);
+        }
+        return status.isSuccess();
+    }
+
+    @Override
+    public void disconnect() {
+        mGoogleApiClient.disconnect();
+    }
+}
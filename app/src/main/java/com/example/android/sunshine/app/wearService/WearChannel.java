@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearService;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Keeps one connection to the Wearable data layer for the whole process, and only sends the
+ * watch face forecasts it does not already have.
+ *
+ * Update requests are debounced: the first of a burst starts {@link WearService} straight away,
+ * which keeps the process alive, and the service waits in {@link #awaitQuiet()} until the burst
+ * is over.  The connection is left open
+ * between updates, so a burst of syncs sets it up once, and is dropped after
+ * {@link #IDLE_MILLIS} without updates.  The last forecast sent is only kept in memory: after the
+ * process restarts, the first update is always sent.
+ */
+public final class WearChannel {
+    private static final String TAG = WearChannel.class.getSimpleName();
+
+    // How long to wait for more updates before updating the watch face
+    static final long DEBOUNCE_MILLIS = 1000;
+    // How long the connection is kept open after the last update
+    static final long IDLE_MILLIS = 60 * 1000;
+
+    // Uptime of the last update requested, and whether WearService has been started for it and
+    // not yet finished waiting
+    private static long sLastRequest;
+    private static boolean sStarted;
+
+    // The idle disconnect waits for any send in progress, which can block for a long time, so
+    // it runs off the main thread
+    private static final Handler sIdleHandler;
+
+    static {
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        sIdleHandler = new Handler(thread.getLooper());
+    }
+
+    private static WearChannel sInstance;
+
+    private final WearDataLayer mDataLayer;
+    private final Runnable mDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            disconnect();
+        }
+    };
+
+    private byte[] mLastSent;
+    private int mConnectionCount;
+    private int mSentCount;
+    private int mSkippedCount;
+
+    /**
+     * Returns the channel, creating it the first time it is needed.
+     */
+    public static synchronized WearChannel get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearChannel(new GmsWearDataLayer(context));
+        }
+        return sInstance;
+    }
+
+    WearChannel(WearDataLayer dataLayer) {
+        mDataLayer = dataLayer;
+    }
+
+    /**
+     * Asks {@link WearService} to update the watch face once no more updates have been requested
+     * for {@link #DEBOUNCE_MILLIS}.  The service is started by the first request of a burst and
+     * not again until it has stopped waiting.  Safe to call from any thread.
+     */
+    public static void requestUpdate(Context context) {
+        synchronized (WearChannel.class) {
+            sLastRequest = SystemClock.uptimeMillis();
+            if (sStarted) {
+                return;
+            }
+            sStarted = true;
+        }
+        Context appContext = context.getApplicationContext();
+        appContext.startService(new Intent(appContext, WearService.class)
+                .setAction(WearService.ACTION_UPDATE_WATCH_FACE));
+    }
+
+    /**
+     * Called by {@link WearService} on its worker thread before it updates: blocks until no more
+     * updates have been requested for {@link #DEBOUNCE_MILLIS}.  Requests made after this
+     * returns start the service again.
+     */
+    static void awaitQuiet() {
+        while (true) {
+            long wait;
+            synchronized (WearChannel.class) {
+                wait = sLastRequest + DEBOUNCE_MILLIS - SystemClock.uptimeMillis();
+                if (wait <= 0) {
+                    sStarted = false;
+                    return;
+                }
+            }
+            SystemClock.sleep(wait);
+        }
+    }
+
+    /**
+     * Sends an encoded {@link com.example.android.sunshine.common.WearForecast} to the watch
+     * face, unless it was the last one sent.  Blocks while connecting and sending, so must not
+     * be called on the main thread.
+     *
+     * @return false if the forecast should have been sent but could not be
+     */
+    public synchronized boolean send(byte[] payload) {
+        if (Arrays.equals(payload, mLastSent)) {
+            mSkippedCount++;
+            Log.v(TAG, "Skipped sending unchanged forecast (" + mSkippedCount + " skipped)");
+            return true;
+        }
+
+        sIdleHandler.removeCallbacks(mDisconnect);
+        if (!mDataLayer.isConnected()) {
+            mConnectionCount++;
+            if (!mDataLayer.connect()) {
+                return false;
+            }
+        }
+        boolean sent = mDataLayer.putForecast(payload);
+        if (sent) {
+            mLastSent = payload;
+            mSentCount++;
+            Log.d(TAG, "Sent " + payload.length + " byte forecast (" + mSentCount + " sent, "
+                    + mConnectionCount + " connections)");
+        }
+        sIdleHandler.postDelayed(mDisconnect, IDLE_MILLIS);
+        return sent;
+    }
+
+    /**
+     * Closes the connection; the next send opens a new one.  Waits for any send in progress, so
+     * must not be called on the main thread.
+     */
+    synchronized void disconnect() {
+        sIdleHandler.removeCallbacks(mDisconnect);
+        if (mDataLayer.isConnected()) {
+            mDataLayer.disconnect();
+        }
+    }
+
+    /**
+     * @return how many times a connection has been set up.
+     */
+    public synchronized int getConnectionCount() {
+        return mConnectionCount;
+    }
+
+    /**
+     * @return how many data items have been sent to the watch face.
+     */
+    public synchronized int getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return how many updates were dropped because the watch face already had the forecast.
+     */
+    public synchronized int getSkippedCount() {
+        return mSkippedCount;
+    }
+}
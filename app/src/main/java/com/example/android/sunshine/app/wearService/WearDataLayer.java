@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearService;
+
+/**
+ * The part of the Wearable data layer that {@link WearChannel} uses.  All methods block, so
+ * must not be called on the main thread.
+ */
+interface WearDataLayer {
+    /**
+     * Connects if not already connected.
+     *
+     * @return true if connected
+     */
+    boolean connect();
+
+    boolean isConnected();
+
+    /**
+     * Puts the forecast data item for the watch face.
+     *
+     * @param payload an encoded {@link com.example.android.sunshine.common.WearForecast}
+     * @return true if the data layer took it
+     */
+    boolean putForecast(byte[] payload);
+
+    void disconnect();
+}
@@ -1,116 +1,91 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
 package com.example.android.sunshine.app.wearService;
 
 import android.app.IntentService;
-import android.app.Service;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.Bundle;
-import android.os.IBinder;
-import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.example.android.sunshine.app.SunshineSettings;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.Wearable;
+import com.example.android.sunshine.common.WearForecast;
+
+import java.util.TimeZone;
 
 /**
- * Created by Sureshkumar on 17/11/16.
+ * Sends the forecast for the preferred location, from today on, to the watch face through
+ * {@link WearChannel}.  Start it with {@link WearChannel#requestUpdate}, which debounces.
  */
-
-public class WearService extends Service implements
-        GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+public class WearService extends IntentService {
 
     private static final String TAG = WearService.class.getSimpleName();
 
     public static final String ACTION_UPDATE_WATCH_FACE = "ACTION_UPDATE_WATCH_FACE";
 
-    private static final String KEY_PATH = "/weather";
-    private static final String KEY_WEATHER_ID = "KEY_WEATHER_ID";
-    private static final String KEY_MAX_TEMP = "KEY_MAX_TEMP";
-    private static final String KEY_MIN_TEMP = "KEY_MIN_TEMP";
-
-    private GoogleApiClient mGoogleApiClient;
+    private static final String[] WEAR_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
 
     public WearService() {
+        super("WearService");
     }
 
     @Override
-    public void onConnected(Bundle bundle) {
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || !ACTION_UPDATE_WATCH_FACE.equals(intent.getAction())) {
+            return;
+        }
+        WearChannel.awaitQuiet();
+
         Log.d(TAG, "Updating the WatchFace");
         String locationQuery = Utility.getPreferredLocation(this);
-
         Uri weatherUri = WeatherContract.WeatherEntry
-                .buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-        Cursor c = getContentResolver().query(
-                weatherUri,
-                new String[]{WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-                        WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-                }, null, null, null);
-
+                .buildWeatherLocationWithStartDate(locationQuery, System.currentTimeMillis());
+        Cursor c = getContentResolver().query(weatherUri, WEAR_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (c == null) {
+            return;
+        }
+        byte[] payload = null;
         if (c.moveToFirst()) {
-            int weatherId = c.getInt(c.getColumnIndex(
-                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
-            String maxTemp = Utility.formatTemperature(this, c.getDouble(
-                    c.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP)));
-            String minTemp = Utility.formatTemperature(this, c.getDouble(
-                    c.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP)));
-
-            final PutDataMapRequest mapRequest = PutDataMapRequest.create(KEY_PATH);
-            mapRequest.getDataMap().putInt(KEY_WEATHER_ID, weatherId);
-            mapRequest.getDataMap().putString(KEY_MAX_TEMP, maxTemp);
-            mapRequest.getDataMap().putString(KEY_MIN_TEMP, minTemp);
-
-            PendingResult<DataApi.DataItemResult> pendingResult =
-                    Wearable.DataApi.putDataItem(mGoogleApiClient, mapRequest.asPutDataRequest());
+            long firstDate = c.getLong(INDEX_DATE);
+            WearForecast forecast = new WearForecast();
+            forecast.reset(SunshineSettings.get(this).metric, WearForecast.julianDay(firstDate,
+                    TimeZone.getDefault().getOffset(firstDate)));
+            do {
+                forecast.addDay(c.getInt(INDEX_WEATHER_ID), c.getDouble(INDEX_MAX_TEMP),
+                        c.getDouble(INDEX_MIN_TEMP));
+            } while (forecast.getDayCount() < WearForecast.MAX_DAYS && c.moveToNext());
+            payload = forecast.encode();
         }
         c.close();
-    }
 
-    @Override
-    public void onConnectionSuspended(int i) {
-        Log.d(TAG, "onConnection suspended");
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-        Log.d(TAG, "onConnection failed");
-    }
-
-    @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null
-                && intent.getAction() != null
-                && intent.getAction().equals(ACTION_UPDATE_WATCH_FACE)) {
-
-            mGoogleApiClient = new GoogleApiClient.Builder(WearService.this)
-                    .addConnectionCallbacks(this)
-                    .addOnConnectionFailedListener(this)
-                    .addApi(Wearable.API)
-                    .build();
-            mGoogleApiClient.connect();
+        if (payload != null) {
+            WearChannel.get(this).send(payload);
         }
-        return super.onStartCommand(intent, flags, startId);
-
     }
-
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
-        mGoogleApiClient.disconnect();
-    }
-
-    @Nullable
-    @Override
-    public IBinder onBind(Intent intent) {
-        return null;
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.IntentService;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Build;
+
+import com.example.android.sunshine.app.R;
+
+/**
+ * IntentService which tells the Detail widgets whose list content changed to reload it
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class DetailWidgetIntentService extends IntentService {
+
+    public DetailWidgetIntentService() {
+        super("DetailWidgetIntentService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        boolean force = intent != null && intent.getBooleanExtra(WidgetUpdates.EXTRA_FORCE, false);
+        if (!force) {
+            // Started by WidgetUpdates.requestUpdate; let the rest of the burst arrive
+            WidgetUpdates.awaitQuiet(DetailWidgetIntentService.class);
+        }
+
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(this, DetailWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+
+        Cursor data = DetailWidgetRemoteViewsService.queryForecast(this);
+        if (data == null) {
+            return;
+        }
+        int contentHash = DetailWidgetRemoteViewsService.contentHash(this, data);
+        data.close();
+
+        // Every widget shows the same list, but they may have last loaded it at different times
+        int[] changedIds = new int[appWidgetIds.length];
+        int changedCount = 0;
+        for (int appWidgetId : appWidgetIds) {
+            if (WidgetUpdates.shouldPush(appWidgetId, contentHash, force)) {
+                changedIds[changedCount++] = appWidgetId;
+            }
+        }
+        if (changedCount > 0) {
+            int[] ids = new int[changedCount];
+            System.arraycopy(changedIds, 0, ids, 0, changedCount);
+            appWidgetManager.notifyAppWidgetViewDataChanged(ids, R.id.widget_list);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
@@ -13,12 +14,20 @@ import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineSettings;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.BitmapCache;
+import com.example.android.sunshine.app.art.WeatherArt;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.common.WeatherConditions;
 
+import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -42,10 +51,56 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // Most bitmap bytes all the rows together may carry.  Each row's RemoteViews parcels its own
+    // copy of its bitmap, and the host keeps every row it has, so stay well under the 1MB binder
+    // transaction limit; rows past the budget show the local icon instead.
+    static final int MAX_BITMAP_BYTES = 512 * 1024;
+
+    // How long to wait for one image from the art pack before the rows fall back to local icons;
+    // long enough for a cached image, as in LargeIconLoader
+    static final long ART_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Queries the rows the widget list shows, in order.
+     */
+    static Cursor queryForecast(Context context) {
+        String location = Utility.getPreferredLocation(context);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+        return context.getContentResolver().query(weatherForLocationUri,
+                FORECAST_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    /**
+     * Hashes everything the list would show for the rows of a {@link #queryForecast} cursor,
+     * formatted the way getViewAt formats it.
+     */
+    static int contentHash(Context context, Cursor data) {
+        int hash = Utility.usingLocalGraphics(context) ? 0
+                : SunshineSettings.get(context).artPackUrlFormat.hashCode();
+        for (int position = 0; data.moveToPosition(position); position++) {
+            long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+            hash = 31 * hash + Arrays.hashCode(new Object[] {
+                    dateInMillis,
+                    Utility.getFriendlyDayString(context, dateInMillis, false),
+                    data.getInt(INDEX_WEATHER_CONDITION_ID),
+                    data.getString(INDEX_WEATHER_DESC),
+                    Utility.formatTemperature(context, data.getDouble(INDEX_WEATHER_MAX_TEMP)),
+                    Utility.formatTemperature(context, data.getDouble(INDEX_WEATHER_MIN_TEMP))});
+        }
+        return hash;
+    }
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            // Art pack image per row, sized for the widget icon; rows showing the same
+            // condition share one bitmap.  Null for rows showing the local icon.
+            private Bitmap[] rowArt = null;
 
             @Override
             public void onCreate() {
@@ -62,15 +117,81 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                data = queryForecast(DetailWidgetRemoteViewsService.this);
                 Binder.restoreCallingIdentity(identityToken);
+                rowArt = loadRowArt(data);
+            }
+
+            // Loads each condition's image once, at the size the widget draws it, and decides
+            // which rows get one within MAX_BITMAP_BYTES.  Called on a binder thread, so it's
+            // fine to block on Glide here, for at most ART_TIMEOUT_MILLIS a condition.  A
+            // condition that failed to load is not tried again for later rows, and once a load
+            // times out no more are started, since every image comes from the same server.
+            private Bitmap[] loadRowArt(Cursor data) {
+                if (data == null || Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    return null;
+                }
+                int iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                BitmapCache cache = BitmapCache.get(DetailWidgetRemoteViewsService.this);
+                Bitmap[] conditionArt = new Bitmap[WeatherConditions.CONDITION_COUNT];
+                boolean[] conditionFailed = new boolean[WeatherConditions.CONDITION_COUNT];
+                boolean timedOut = false;
+                Bitmap[] rowArt = new Bitmap[data.getCount()];
+                int totalBytes = 0;
+                for (int position = 0; data.moveToPosition(position); position++) {
+                    WeatherArt weatherArt = Utility.getArtForWeatherCondition(
+                            DetailWidgetRemoteViewsService.this,
+                            data.getInt(INDEX_WEATHER_CONDITION_ID));
+                    if (weatherArt == null || conditionFailed[weatherArt.condition]) {
+                        continue;
+                    }
+                    Bitmap art = conditionArt[weatherArt.condition];
+                    if (art == null) {
+                        art = cache.getArt(weatherArt, iconSize, iconSize);
+                        if (art == null && !timedOut) {
+                            try {
+                                art = loadArt(cache, weatherArt, iconSize);
+                            } catch (TimeoutException e) {
+                                Log.d(LOG_TAG, "Art from " + weatherArt + " is late, using "
+                                        + "local icons for the rest of the list");
+                                timedOut = true;
+                            }
+                        }
+                        if (art == null) {
+                            conditionFailed[weatherArt.condition] = true;
+                            continue;
+                        }
+                        conditionArt[weatherArt.condition] = art;
+                    }
+                    int bytes = art.getRowBytes() * art.getHeight();
+                    if (totalBytes + bytes > MAX_BITMAP_BYTES) {
+                        Log.d(LOG_TAG, "Widget art budget reached at row " + position);
+                        break;
+                    }
+                    totalBytes += bytes;
+                    rowArt[position] = art;
+                }
+                return rowArt;
+            }
+
+            private Bitmap loadArt(BitmapCache cache, WeatherArt weatherArt, int iconSize)
+                    throws TimeoutException {
+                FutureTarget<Bitmap> future = Glide.with(DetailWidgetRemoteViewsService.this)
+                        .load(weatherArt)
+                        .asBitmap()
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .fitCenter()
+                        .into(iconSize, iconSize);
+                try {
+                    // Keep our own copy; Glide takes its bitmap back once the future is cleared
+                    return cache.putArt(weatherArt, iconSize, iconSize,
+                            future.get(ART_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArt, e);
+                    return null;
+                } finally {
+                    Glide.clear(future);
+                }
             }
 
             @Override
@@ -79,6 +200,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                     data.close();
                     data = null;
                 }
+                rowArt = null;
             }
 
             @Override
@@ -96,20 +218,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
+                Bitmap weatherArtImage = rowArt != null && position < rowArt.length
+                        ? rowArt[position] : null;
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
                 String formattedDate = Utility.getFriendlyDayString(
@@ -26,6 +26,8 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -34,6 +36,8 @@ import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.Arrays;
+
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
@@ -50,12 +54,26 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    // Layout chosen for each widget id from its size, until the size changes
+    private static final SparseIntArray sLayoutIds = new SparseIntArray();
+
+    // Views last built for each layout, and the content they were built with.  RemoteViews are
+    // copied when they are sent, so one instance can go to any number of widgets.
+    private static final SparseArray<RemoteViews> sRenderedViews = new SparseArray<RemoteViews>();
+    private static final SparseIntArray sRenderedHashes = new SparseIntArray();
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
+        boolean force = intent != null && intent.getBooleanExtra(WidgetUpdates.EXTRA_FORCE, false);
+        if (!force) {
+            // Started by WidgetUpdates.requestUpdate; let the rest of the burst arrive
+            WidgetUpdates.awaitQuiet(TodayWidgetIntentService.class);
+        }
+
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
@@ -84,22 +102,26 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
+        int contentHash = Arrays.hashCode(new Object[] {weatherArtResourceId,
+                description, formattedMaxTemperature, formattedMinTemperature});
 
         // Perform this loop procedure for each Today widget
         for (int appWidgetId : appWidgetIds) {
             // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
+            int layoutId = getLayoutId(appWidgetManager, appWidgetId);
+
+            // Leave the widget alone if it already shows exactly this
+            if (!WidgetUpdates.shouldPush(appWidgetId, 31 * contentHash + layoutId, force)) {
+                continue;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+
+            // Widgets of the same size show the same views, so only build them once
+            RemoteViews views = getRenderedViews(layoutId, contentHash);
+            if (views != null) {
+                appWidgetManager.updateAppWidget(appWidgetId, views);
+                continue;
+            }
+            views = new RemoteViews(getPackageName(), layoutId);
 
             // Add the data to the RemoteViews
             views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
@@ -118,9 +140,59 @@ public class TodayWidgetIntentService extends IntentService {
 
             // Tell the AppWidgetManager to perform an update on the current app widget
             appWidgetManager.updateAppWidget(appWidgetId, views);
+            putRenderedViews(layoutId, contentHash, views);
+        }
+    }
+
+    /**
+     * Forgets the size of a widget, so it is looked up again on the next update.  Call when the
+     * widget is resized or deleted.
+     */
+    static void forgetWidgetSize(int appWidgetId) {
+        synchronized (sLayoutIds) {
+            sLayoutIds.delete(appWidgetId);
         }
     }
 
+    private int getLayoutId(AppWidgetManager appWidgetManager, int appWidgetId) {
+        synchronized (sLayoutIds) {
+            int layoutId = sLayoutIds.get(appWidgetId);
+            if (layoutId != 0) {
+                return layoutId;
+            }
+        }
+
+        int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        int layoutId;
+        if (widgetWidth >= largeWidth) {
+            layoutId = R.layout.widget_today_large;
+        } else if (widgetWidth >= defaultWidth) {
+            layoutId = R.layout.widget_today;
+        } else {
+            layoutId = R.layout.widget_today_small;
+        }
+        synchronized (sLayoutIds) {
+            sLayoutIds.put(appWidgetId, layoutId);
+        }
+        return layoutId;
+    }
+
+    // Only called from onHandleIntent, which runs one intent at a time
+    private static RemoteViews getRenderedViews(int layoutId, int contentHash) {
+        RemoteViews views = sRenderedViews.get(layoutId);
+        if (views != null && sRenderedHashes.get(layoutId) == contentHash) {
+            return views;
+        }
+        return null;
+    }
+
+    private static void putRenderedViews(int layoutId, int contentHash, RemoteViews views) {
+        sRenderedViews.put(layoutId, views);
+        sRenderedHashes.put(layoutId, contentHash);
+    }
+
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
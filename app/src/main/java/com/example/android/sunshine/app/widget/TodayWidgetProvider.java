@@ -34,20 +34,32 @@ public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The host asked for the views, so send them whether or not they changed
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(WidgetUpdates.EXTRA_FORCE, true));
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        TodayWidgetIntentService.forgetWidgetSize(appWidgetId);
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(WidgetUpdates.EXTRA_FORCE, true));
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        WidgetUpdates.forget(appWidgetIds);
+        for (int appWidgetId : appWidgetIds) {
+            TodayWidgetIntentService.forgetWidgetSize(appWidgetId);
+        }
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            WidgetUpdates.requestUpdate(context, TodayWidgetIntentService.class);
         }
     }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps widget updates down to the ones that change what a widget shows.
+ *
+ * Data updates arrive in bursts (one per location synced, plus settings changes), so they are
+ * debounced.  The first request of a burst starts the widget's service straight away, which keeps
+ * the process alive, and the service waits in {@link #awaitQuiet} until the burst is over.  The
+ * services then hash what each widget would
+ * render and only push it if the hash differs from what that widget id last got.  Hashes are
+ * only kept in memory: after the process restarts, every widget is pushed once more.
+ */
+public final class WidgetUpdates {
+    private static final String LOG_TAG = WidgetUpdates.class.getSimpleName();
+
+    // How long to wait for more data updates before updating the widgets
+    static final long DEBOUNCE_MILLIS = 1000;
+
+    // Set by the system-driven paths (widget added, resized, host restarted), which must always
+    // push, whatever we think the widget is showing
+    static final String EXTRA_FORCE = "com.example.android.sunshine.app.widget.extra.FORCE";
+
+    // Uptime of the last update requested for each service, and whether a start for it is still
+    // waiting in awaitQuiet
+    private static final Map<Class<? extends Service>, Long> sLastRequests =
+            new HashMap<Class<? extends Service>, Long>();
+    private static final Map<Class<? extends Service>, Boolean> sStarted =
+            new HashMap<Class<? extends Service>, Boolean>();
+
+    // Hash of the content last pushed to each widget id
+    private static final SparseIntArray sRendered = new SparseIntArray();
+    private static int sApplied;
+    private static int sSkipped;
+
+    private WidgetUpdates() {
+    }
+
+    /**
+     * Asks a widget update service to run once no more updates have been requested for
+     * {@link #DEBOUNCE_MILLIS}.  The service is started by the first request of a burst and
+     * not again until it has stopped waiting.  Safe to call from any thread.
+     */
+    static void requestUpdate(Context context, Class<? extends Service> service) {
+        synchronized (WidgetUpdates.class) {
+            sLastRequests.put(service, SystemClock.uptimeMillis());
+            if (Boolean.TRUE.equals(sStarted.put(service, true))) {
+                return;
+            }
+        }
+        Context appContext = context.getApplicationContext();
+        appContext.startService(new Intent(appContext, service));
+    }
+
+    /**
+     * Called by a widget update service, on its worker thread, before a requested update: blocks
+     * until no more updates have been requested for {@link #DEBOUNCE_MILLIS}.  Requests made
+     * after this returns start the service again.
+     */
+    static void awaitQuiet(Class<? extends Service> service) {
+        while (true) {
+            long wait;
+            synchronized (WidgetUpdates.class) {
+                Long lastRequest = sLastRequests.get(service);
+                wait = lastRequest == null
+                        ? 0 : lastRequest + DEBOUNCE_MILLIS - SystemClock.uptimeMillis();
+                if (wait <= 0) {
+                    sStarted.put(service, false);
+                    return;
+                }
+            }
+            SystemClock.sleep(wait);
+        }
+    }
+
+    /**
+     * Returns true, and remembers the content, if the widget should be pushed: it has not been
+     * pushed this content before, or force is set.
+     */
+    static synchronized boolean shouldPush(int appWidgetId, int contentHash, boolean force) {
+        int index = sRendered.indexOfKey(appWidgetId);
+        if (!force && index >= 0 && sRendered.valueAt(index) == contentHash) {
+            sSkipped++;
+            Log.v(LOG_TAG, "Skipped update of widget " + appWidgetId + " (" + sSkipped + " skipped)");
+            return false;
+        }
+        sRendered.put(appWidgetId, contentHash);
+        sApplied++;
+        Log.v(LOG_TAG, "Applied update of widget " + appWidgetId + " (" + sApplied + " applied)");
+        return true;
+    }
+
+    /**
+     * Forgets what the widgets were showing, so their next update is pushed.  Call when widgets
+     * are deleted, or redrawn by other means.
+     */
+    static synchronized void forget(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            sRendered.delete(appWidgetId);
+        }
+    }
+
+    /**
+     * @return how many widget updates were pushed since the process started.
+     */
+    public static synchronized int getAppliedCount() {
+        return sApplied;
+    }
+
+    /**
+     * @return how many widget updates were dropped because the widget already showed the same
+     * content.
+     */
+    public static synchronized int getSkippedCount() {
+        return sSkipped;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times encoding a week of forecast on the phone and decoding it on the watch.  Run with
+ * -prof gc to check that decoding allocates nothing.
+ *
+ * Payload sizes against the string DataMap are logged by TestWearForecast in the app, since
+ * DataMap needs the Play services classes.
+ *
+ * Run with ./gradlew :sunshinecommon:jmh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class WearForecastBenchmark {
+
+    private static final int DAYS = 7;
+
+    private WearForecast mForecast;
+    private WearForecast mDecoded;
+    private byte[] mPayload;
+
+    @Setup
+    public void setUp() {
+        mForecast = new WearForecast();
+        mForecast.reset(true, 2457000);
+        for (int i = 0; i < DAYS; i++) {
+            mForecast.addDay(800 + i, 21.5 + i, 9.25 - i);
+        }
+        mPayload = mForecast.encode();
+        mDecoded = new WearForecast();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return mForecast.encode();
+    }
+
+    @Benchmark
+    public boolean decode() {
+        return mDecoded.decode(mPayload);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the condition table against the if chains it replaced, over a spread of codes
+ * like a real forecast has.
+ *
+ * Run with ./gradlew :sunshinecommon:jmh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class WeatherConditionsBenchmark {
+
+    private static final String ART_URL_FORMAT =
+            "https://www.gstatic.com/android/sunshine/art_%s.png";
+
+    // All the codes OpenWeatherMap sends, most of them clear or cloudy
+    private static final int[] COMMON_CODES = {
+            800, 800, 800, 801, 802, 803, 804, 804, 500, 501, 502, 300, 211, 600, 601, 701, 741, 781
+    };
+
+    private int[] mCodes;
+    private String[] mArtUrls;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mCodes = new int[1024];
+        for (int i = 0; i < mCodes.length; i++) {
+            mCodes[i] = COMMON_CODES[random.nextInt(COMMON_CODES.length)];
+        }
+        mArtUrls = new String[WeatherConditions.CONDITION_COUNT];
+        for (int i = 1; i < WeatherConditions.CONDITION_COUNT; i++) {
+            mArtUrls[i] = String.format(Locale.US, ART_URL_FORMAT, WeatherConditions.getArtName(i));
+        }
+    }
+
+    @Benchmark
+    public void ifChainCondition(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(legacyArtName(code));
+        }
+    }
+
+    @Benchmark
+    public void tableCondition(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(WeatherConditions.getArtName(WeatherConditions.getCondition(code)));
+        }
+    }
+
+    @Benchmark
+    public void ifChainArtUrl(Blackhole blackhole) {
+        for (int code : mCodes) {
+            String name = legacyArtName(code);
+            blackhole.consume(name == null ? null : String.format(Locale.US, ART_URL_FORMAT, name));
+        }
+    }
+
+    @Benchmark
+    public void tableArtUrl(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(mArtUrls[WeatherConditions.getCondition(code)]);
+        }
+    }
+
+    // The mapping as Utility.getArtUrlForWeatherCondition used to work it out
+    private static String legacyArtName(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "storm";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "light_rain";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "rain";
+        } else if (weatherId == 511) {
+            return "snow";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "rain";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "snow";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "fog";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "storm";
+        } else if (weatherId == 800) {
+            return "clear";
+        } else if (weatherId == 801) {
+            return "light_clouds";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "clouds";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common;
+
+/**
+ * Several days of forecast, in the compact binary form the phone sends the watch face.
+ *
+ * Temperatures are sent raw, in hundredths of a degree Celsius, with the user's units alongside.
+ * The watch face converts and rounds them itself through {@link #getHigh(int)} and
+ * {@link #getLow(int)}, which round with {@link #roundDegrees(double)} as the phone does, so both
+ * show the same whole degrees.  Hundredths keep the forecast's two decimals exactly; rounding to
+ * anything coarser first would round some days twice.  The encoding is big-endian:
+ *
+ * <pre>
+ *   byte   version, {@link #VERSION}
+ *   byte   flags, {@link #FLAG_METRIC} if the user shows Celsius, not Fahrenheit
+ *   int    Julian day of the first day
+ *   byte   number of days, at most {@link #MAX_DAYS}
+ *   then for each day:
+ *   short  weather condition code
+ *   short  high, in hundredths of a degree Celsius
+ *   short  low, in hundredths of a degree Celsius
+ * </pre>
+ *
+ * {@link #decode(byte[])} fills in an existing instance and allocates nothing, so the watch
+ * face can decode on its UI thread.
+ */
+public final class WearForecast {
+
+    // Bump when the layout changes; decoders reject versions they don't know
+    public static final int VERSION = 2;
+
+    public static final int FLAG_METRIC = 1;
+
+    public static final int MAX_DAYS = 14;
+
+    private static final int HEADER_SIZE = 7;
+    private static final int DAY_SIZE = 6;
+
+    // Same as SunshineDateUtils in the app, which has the timezone-aware versions
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    private boolean mMetric;
+    private int mStartJulianDay;
+    private int mDayCount;
+    private final int[] mWeatherIds = new int[MAX_DAYS];
+    private final int[] mHighs = new int[MAX_DAYS];
+    private final int[] mLows = new int[MAX_DAYS];
+
+    /**
+     * @return the size in bytes of the encoding of dayCount days.
+     */
+    public static int encodedSize(int dayCount) {
+        return HEADER_SIZE + dayCount * DAY_SIZE;
+    }
+
+    /**
+     * Returns the local Julian day of an instant, as SunshineDateUtils numbers them.
+     *
+     * @param offsetMillis offset of the local timezone from UTC at that instant
+     */
+    public static int julianDay(long millis, long offsetMillis) {
+        long localMillis = millis + offsetMillis;
+        long day = localMillis / DAY_IN_MILLIS;
+        if (localMillis < 0 && day * DAY_IN_MILLIS != localMillis) {
+            day--;
+        }
+        return (int) day + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * Rounds a temperature to whole degrees for display, half away from zero as the "%1.0f"
+     * format does.  The phone app rounds with this too.
+     */
+    public static int roundDegrees(double temperature) {
+        int degrees = (int) Math.floor(Math.abs(temperature) + 0.5);
+        return temperature < 0 ? -degrees : degrees;
+    }
+
+    /**
+     * Empties the forecast and sets what applies to all of its days.
+     *
+     * @param metric true if temperatures should be shown in Celsius, false for Fahrenheit
+     */
+    public void reset(boolean metric, int startJulianDay) {
+        mMetric = metric;
+        mStartJulianDay = startJulianDay;
+        mDayCount = 0;
+    }
+
+    /**
+     * Appends the next day.  Days past {@link #MAX_DAYS} are dropped.
+     *
+     * @param high in degrees Celsius
+     * @param low in degrees Celsius
+     * @return false if the forecast was already full
+     */
+    public boolean addDay(int weatherId, double high, double low) {
+        if (mDayCount == MAX_DAYS) {
+            return false;
+        }
+        mWeatherIds[mDayCount] = clampToShort(weatherId);
+        mHighs[mDayCount] = clampToShort(Math.round(high * 100));
+        mLows[mDayCount] = clampToShort(Math.round(low * 100));
+        mDayCount++;
+        return true;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    public int getStartJulianDay() {
+        return mStartJulianDay;
+    }
+
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    /**
+     * @return the index of the given Julian day, or -1 if the forecast doesn't cover it.
+     */
+    public int indexOfDay(int julianDay) {
+        int index = julianDay - mStartJulianDay;
+        return index >= 0 && index < mDayCount ? index : -1;
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public double getHighCelsius(int day) {
+        return mHighs[day] / 100.0;
+    }
+
+    public double getLowCelsius(int day) {
+        return mLows[day] / 100.0;
+    }
+
+    /**
+     * @return the high in the whole degrees the phone shows for it, in the user's units.
+     */
+    public int getHigh(int day) {
+        return toDisplayDegrees(getHighCelsius(day));
+    }
+
+    /**
+     * @return the low in the whole degrees the phone shows for it, in the user's units.
+     */
+    public int getLow(int day) {
+        return toDisplayDegrees(getLowCelsius(day));
+    }
+
+    private int toDisplayDegrees(double celsius) {
+        // Converted as SunshineFormatter does before rounding
+        return roundDegrees(mMetric ? celsius : (celsius * 1.8) + 32);
+    }
+
+    /**
+     * Encodes the forecast into a new array of {@link #encodedSize(int)} bytes.
+     */
+    public byte[] encode() {
+        byte[] payload = new byte[encodedSize(mDayCount)];
+        payload[0] = VERSION;
+        payload[1] = (byte) (mMetric ? FLAG_METRIC : 0);
+        putInt(payload, 2, mStartJulianDay);
+        payload[6] = (byte) mDayCount;
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < mDayCount; i++) {
+            putShort(payload, offset, mWeatherIds[i]);
+            putShort(payload, offset + 2, mHighs[i]);
+            putShort(payload, offset + 4, mLows[i]);
+            offset += DAY_SIZE;
+        }
+        return payload;
+    }
+
+    /**
+     * Replaces this forecast with the one encoded in payload.  Allocates nothing.
+     *
+     * @return false, leaving this forecast unchanged, if payload is of an unknown version or
+     * malformed
+     */
+    public boolean decode(byte[] payload) {
+        if (payload == null || payload.length < HEADER_SIZE || payload[0] != VERSION) {
+            return false;
+        }
+        int dayCount = payload[6] & 0xff;
+        if (dayCount > MAX_DAYS || payload.length != encodedSize(dayCount)) {
+            return false;
+        }
+
+        mMetric = (payload[1] & FLAG_METRIC) != 0;
+        mStartJulianDay = getInt(payload, 2);
+        mDayCount = dayCount;
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < dayCount; i++) {
+            mWeatherIds[i] = getShort(payload, offset);
+            mHighs[i] = getShort(payload, offset + 2);
+            mLows[i] = getShort(payload, offset + 4);
+            offset += DAY_SIZE;
+        }
+        return true;
+    }
+
+    private static int clampToShort(long value) {
+        return (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    private static void putShort(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >> 8);
+        b[offset + 1] = (byte) value;
+    }
+
+    private static void putInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >> 24);
+        b[offset + 1] = (byte) (value >> 16);
+        b[offset + 2] = (byte) (value >> 8);
+        b[offset + 3] = (byte) value;
+    }
+
+    private static int getShort(byte[] b, int offset) {
+        return (short) ((b[offset] << 8) | (b[offset + 1] & 0xff));
+    }
+
+    private static int getInt(byte[] b, int offset) {
+        return (b[offset] << 24) | ((b[offset + 1] & 0xff) << 16)
+                | ((b[offset + 2] & 0xff) << 8) | (b[offset + 3] & 0xff);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common;
+
+/**
+ * Maps OpenWeatherMap condition codes to the handful of conditions Sunshine has artwork for.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ *
+ * The mapping is worked out once into a table indexed by condition code, so a lookup is a
+ * bounds check and an array read.  Each module keeps its own table of resources indexed by the
+ * values returned from {@link #getCondition(int)}, since resource ids differ between the phone
+ * app and the watch face.
+ */
+public final class WeatherConditions {
+
+    // Conditions with artwork.  These index the tables below and the resource tables of the
+    // modules using them, so keep them dense and starting at zero.
+    public static final int UNKNOWN = 0;
+    public static final int STORM = 1;
+    public static final int LIGHT_RAIN = 2;
+    public static final int RAIN = 3;
+    public static final int SNOW = 4;
+    public static final int FOG = 5;
+    public static final int TORNADO = 6;
+    public static final int CLEAR = 7;
+    public static final int LIGHT_CLOUDS = 8;
+    public static final int CLOUDS = 9;
+
+    public static final int CONDITION_COUNT = 10;
+
+    // Every OpenWeatherMap code is below 1000
+    public static final int CODE_COUNT = 1000;
+
+    private static final byte[] CONDITIONS = new byte[CODE_COUNT];
+
+    // Names used in the art pack URLs, indexed by condition
+    private static final String[] ART_NAMES = {
+            null,
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "storm",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+
+    // Photographs used for the Muzei wallpaper, indexed by condition
+    private static final String[] IMAGE_URLS = {
+            null,
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    static {
+        fill(200, 232, STORM);
+        fill(300, 321, LIGHT_RAIN);
+        fill(500, 504, RAIN);
+        fill(511, 511, SNOW);
+        fill(520, 531, RAIN);
+        fill(600, 622, SNOW);
+        // 761 (dust) has always been drawn as fog
+        fill(701, 761, FOG);
+        fill(781, 781, TORNADO);
+        fill(800, 800, CLEAR);
+        fill(801, 801, LIGHT_CLOUDS);
+        fill(802, 804, CLOUDS);
+    }
+
+    private static void fill(int firstCode, int lastCode, int condition) {
+        for (int code = firstCode; code <= lastCode; code++) {
+            CONDITIONS[code] = (byte) condition;
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the condition to draw for the code, or {@link #UNKNOWN} if there is no artwork
+     * for it.
+     */
+    public static int getCondition(int weatherId) {
+        if (weatherId < 0 || weatherId >= CODE_COUNT) {
+            return UNKNOWN;
+        }
+        return CONDITIONS[weatherId];
+    }
+
+    /**
+     * @param condition value returned by {@link #getCondition(int)}
+     * @return the name of the condition in art pack URLs, or null for {@link #UNKNOWN}.
+     */
+    public static String getArtName(int condition) {
+        return ART_NAMES[condition];
+    }
+
+    /**
+     * @param condition value returned by {@link #getCondition(int)}
+     * @return a URL to a photograph of the condition, or null for {@link #UNKNOWN}.
+     */
+    public static String getImageUrl(int condition) {
+        return IMAGE_URLS[condition];
+    }
+}
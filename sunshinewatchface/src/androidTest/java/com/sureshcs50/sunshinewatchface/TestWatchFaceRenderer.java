@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sureshcs50.sunshinewatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.Calendar;
+
+/*
+    Counts the objects allocated while drawing frames once the renderer has warmed up, which
+    must be none.  That includes redrawing the date and weather layers for ambient mode, which
+    should reuse their bitmaps.  Also checks that frames which would look the same are skipped.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    private static final int SIZE = 320;
+
+    @SuppressWarnings("deprecation")
+    public void testDrawDoesNotAllocate() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mContext.getResources());
+        renderer.applyInsets(true);
+        renderer.setWeather("21°", "12°", Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888));
+        Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+
+        // Ten in the morning, so the frames below stay on one day
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 10);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        long start = calendar.getTimeInMillis();
+
+        // The first frames build the date and measure what they draw
+        for (int second = 0; second < 120; second++) {
+            renderer.draw(canvas, bounds, start + second * 1000);
+        }
+        renderer.setAmbient(true, false);
+        renderer.draw(canvas, bounds, start + 120 * 1000);
+        renderer.setAmbient(false, false);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int second = 120; second < 300; second++) {
+            renderer.draw(canvas, bounds, start + second * 1000);
+        }
+        renderer.setAmbient(true, false);
+        renderer.draw(canvas, bounds, start + 300 * 1000);
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: drawing a frame should not allocate",
+                0, Debug.getThreadAllocCount());
+    }
+
+    public void testNeedsRedraw() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mContext.getResources());
+        renderer.applyInsets(false);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 10);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long start = calendar.getTimeInMillis();
+
+        assertTrue("Error: the first frame should always be drawn", renderer.needsRedraw(start));
+        renderer.draw(canvas, bounds, start);
+        assertFalse("Error: a tick within the same second should be skipped",
+                renderer.needsRedraw(start + 999));
+        assertTrue("Error: the next second should be drawn", renderer.needsRedraw(start + 1000));
+
+        renderer.setShowSeconds(false);
+        assertTrue("Error: hiding the seconds should redraw", renderer.needsRedraw(start + 500));
+        renderer.draw(canvas, bounds, start + 500);
+        assertFalse("Error: without seconds, only a new minute should be drawn",
+                renderer.needsRedraw(start + 59 * 1000));
+        assertTrue(renderer.needsRedraw(start + 60 * 1000));
+
+        renderer.setWeather("21°", "12°", null);
+        assertTrue("Error: new weather should be drawn", renderer.needsRedraw(start + 1000));
+    }
+}
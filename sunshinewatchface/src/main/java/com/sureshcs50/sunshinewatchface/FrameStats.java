@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sureshcs50.sunshinewatchface;
+
+import java.io.PrintWriter;
+
+/**
+ * Counts the frames the watch face draws and skips, with a histogram of how long draws take.
+ *
+ * Read it with
+ * <pre>
+ * adb shell dumpsys activity service com.sureshcs50.sunshinewatchface/.SunshineWatchFaceService
+ * </pre>
+ * and add "reset" to the end to start counting again.  Recording allocates nothing, so it can
+ * be done every frame.
+ */
+final class FrameStats {
+    private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+    // Upper bounds of the histogram buckets, in milliseconds; the last bucket is open ended
+    private static final int[] BUCKET_LIMITS_MS = {1, 2, 4, 8, 16, 33};
+
+    private final int[] mBuckets = new int[BUCKET_LIMITS_MS.length + 1];
+    private long mDrawn;
+    private long mSkipped;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    synchronized void recordDraw(long durationNanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_MS.length
+                && durationNanos >= BUCKET_LIMITS_MS[bucket] * NANOS_PER_MILLI) {
+            bucket++;
+        }
+        mBuckets[bucket]++;
+        mDrawn++;
+        mTotalNanos += durationNanos;
+        mMaxNanos = Math.max(mMaxNanos, durationNanos);
+    }
+
+    /**
+     * Records a tick that drew nothing, because the face would have looked the same.
+     */
+    synchronized void recordSkip() {
+        mSkipped++;
+    }
+
+    synchronized void reset() {
+        for (int i = 0; i < mBuckets.length; i++) {
+            mBuckets[i] = 0;
+        }
+        mDrawn = 0;
+        mSkipped = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.println("Frames drawn: " + mDrawn);
+        writer.println("Frames skipped: " + mSkipped);
+        if (mDrawn > 0) {
+            writer.printf("Draw time: mean %.3f ms, max %.3f ms%n",
+                    (double) mTotalNanos / mDrawn / NANOS_PER_MILLI,
+                    (double) mMaxNanos / NANOS_PER_MILLI);
+        }
+        for (int i = 0; i < mBuckets.length; i++) {
+            String range = i < BUCKET_LIMITS_MS.length
+                    ? "< " + BUCKET_LIMITS_MS[i] + " ms"
+                    : ">= " + BUCKET_LIMITS_MS[BUCKET_LIMITS_MS.length - 1] + " ms";
+            writer.println("  " + range + ": " + mBuckets[i]);
+        }
+    }
+}
@@ -20,19 +20,14 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
-import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
+import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateFormat;
 import android.util.Log;
@@ -45,14 +40,17 @@ import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
-import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -63,44 +61,47 @@ import java.util.concurrent.TimeUnit;
  */
 public class SunshineWatchFaceService extends CanvasWatchFaceService {
     private static final String TAG = SunshineWatchFaceService.class.getSimpleName();
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-    private static final Typeface BOLD_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
 
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * displayed in interactive mode.  Ticks land on whole seconds, or whole minutes in mute mode,
+     * when seconds are hidden.
      */
     private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
-    private static final long NORMAL_UPDATE_RATE_MS = 500;
     private static final long MUTE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
 
-    
     private static final int MSG_UPDATE_TIME = 0;
 
+    final FrameStats mFrameStats = new FrameStats();
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            mFrameStats.reset();
+            writer.println("Frame stats reset");
+            return;
+        }
+        mFrameStats.dump(writer);
+    }
+
     private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener,
             GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
 
         private static final String WEATHER_PATH = "/weather";
 
-        private static final String KEY_HIGH = "KEY_MAX_TEMP";
-        private static final String KEY_LOW = "KEY_MIN_TEMP";
-        private static final String KEY_WEATHER_ID = "KEY_WEATHER_ID";
+        private static final String KEY_FORECAST = "KEY_FORECAST";
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                long now = System.currentTimeMillis();
-                mCalendar.setTimeInMillis(now);
+                mRenderer.setTimeZone(TimeZone.getDefault());
             }
         };
 
@@ -112,27 +113,22 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         boolean mRegisteredTimeZoneReceiver = false;
 
-        Paint mBackgroundPaint;
-        Paint mTextTimePaint;
-        Paint mTextTimeSecondsPaint;
-        Paint mTextDatePaint;
-        Paint mTextDateAmbientPaint;
-        Paint mTextTempHighPaint;
-        Paint mTextTempLowPaint;
-        Paint mTextTempLowAmbientPaint;
+        WatchFaceRenderer mRenderer;
 
-        Bitmap mWeatherIcon;
-        String mWeatherHigh;
-        String mWeatherLow;
+        WeatherLoader mWeatherLoader;
+        // The weather being drawn, and the day it was last asked to load, so a new day is only
+        // asked for once
+        WeatherLoader.Weather mWeather;
+        int mRequestedJulianDay = -1;
+        // When the engine was created, to log how long the first weather took
+        long mCreatedRealtime;
+        boolean mLoggedFirstWeather;
 
         boolean mAmbient;
 
-        private Calendar mCalendar;
+        boolean mMute;
 
-        float mTimeYOffset;
-        float mDateYOffset;
-        float mDividerYOffset;
-        float mWeatherYOffset;
+        boolean mIsRound;
 
         boolean mLowBitAmbient;
 
@@ -145,37 +141,27 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
                     .setShowSystemUiTime(false)
                     .build());
-            Resources resources = SunshineWatchFaceService.this.getResources();
-            mTimeYOffset = resources.getDimension(R.dimen.digital_time_y_offset);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.digital_background));
-
-            mTextTimePaint = createTextPaint(Color.WHITE, NORMAL_TYPEFACE);
-            mTextTimeSecondsPaint = createTextPaint(Color.WHITE, NORMAL_TYPEFACE);
-            mTextDatePaint = createTextPaint(resources.getColor(R.color.primary_light), NORMAL_TYPEFACE);
-            mTextDateAmbientPaint = createTextPaint(Color.WHITE, NORMAL_TYPEFACE);
-            mTextTempHighPaint = createTextPaint(Color.WHITE, BOLD_TYPEFACE);
-            mTextTempLowPaint = createTextPaint(resources.getColor(R.color.primary_light), NORMAL_TYPEFACE);
-            mTextTempLowAmbientPaint = createTextPaint(Color.WHITE, NORMAL_TYPEFACE);
-
-            mCalendar = Calendar.getInstance();
+            mRenderer = new WatchFaceRenderer(SunshineWatchFaceService.this.getResources());
+            mWeatherLoader = new WeatherLoader(SunshineWatchFaceService.this,
+                    new WeatherLoader.Listener() {
+                        @Override
+                        public void onWeatherLoaded() {
+                            postInvalidate();
+                        }
+                    });
+            // Draw the last forecast we had straight away; the phone's copy replaces it
+            // once the data layer connects
+            mCreatedRealtime = SystemClock.elapsedRealtime();
+            mWeatherLoader.restore(mRenderer.getJulianDay(System.currentTimeMillis()));
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mWeatherLoader.quit();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor, Typeface typeface) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -185,9 +171,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
                 registerReceiver();
 
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                long now = System.currentTimeMillis();
-                mCalendar.setTimeInMillis(now);
+                mRenderer.setTimeZone(TimeZone.getDefault());
+                mRenderer.set24HourFormat(DateFormat.is24HourFormat(SunshineWatchFaceService.this));
             } else {
                 unregisterReceiver();
 
@@ -221,31 +206,12 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
 
-            // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-
-            mDateYOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_date_y_offset_round : R.dimen.digital_date_y_offset);
-            mDividerYOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_divider_y_offset_round : R.dimen.digital_divider_y_offset);
-            mWeatherYOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_weather_y_offset_round : R.dimen.digital_weather_y_offset);
-
-            float timeTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size);
-            float dateTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size);
-            float tempTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
-
-            mTextTimePaint.setTextSize(timeTextSize);
-            mTextTimeSecondsPaint.setTextSize((float) (tempTextSize * 0.80));
-            mTextDatePaint.setTextSize(dateTextSize);
-            mTextDateAmbientPaint.setTextSize(dateTextSize);
-            mTextTempHighPaint.setTextSize(tempTextSize);
-            mTextTempLowAmbientPaint.setTextSize(tempTextSize);
-            mTextTempLowPaint.setTextSize(tempTextSize);
+            mIsRound = insets.isRound();
+            mRenderer.applyInsets(mIsRound);
+            if (mWeather != null) {
+                // Both shapes' icons are already scaled
+                applyWeather();
+            }
         }
 
         @Override
@@ -257,6 +223,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            // Reading the setting allocates, so it is checked once a minute rather than per frame
+            mRenderer.set24HourFormat(DateFormat.is24HourFormat(SunshineWatchFaceService.this));
             invalidate();
         }
 
@@ -265,100 +233,51 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextTimePaint.setAntiAlias(!inAmbientMode);
-                    mTextDatePaint.setAntiAlias(!inAmbientMode);
-                    mTextDateAmbientPaint.setAntiAlias(!inAmbientMode);
-                    mTextTempHighPaint.setAntiAlias(!inAmbientMode);
-                    mTextTempLowAmbientPaint.setAntiAlias(!inAmbientMode);
-                    mTextTempLowPaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(inAmbientMode, mLowBitAmbient);
                 invalidate();
             }
             updateTimer();
         }
 
         @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-            if (mAmbient) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+        public void onInterruptionFilterChanged(int interruptionFilter) {
+            super.onInterruptionFilterChanged(interruptionFilter);
+            boolean inMuteMode = interruptionFilter == WatchFaceService.INTERRUPTION_FILTER_NONE;
+            if (mMute != inMuteMode) {
+                mMute = inMuteMode;
+                mRenderer.setShowSeconds(!inMuteMode);
+                invalidate();
+                updateTimer();
             }
+        }
 
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
             long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            boolean is24Hour = DateFormat.is24HourFormat(SunshineWatchFaceService.this);
-            int minute = mCalendar.get(Calendar.MINUTE);
-            int second = mCalendar.get(Calendar.SECOND);
-            int am_pm  = mCalendar.get(Calendar.AM_PM);
 
-            String timeText;
-            if (is24Hour) {
-                int hour = mCalendar.get(Calendar.HOUR_OF_DAY);
-                timeText = String.format("%02d:%02d", hour, minute);
-            } else {
-                int hour = mCalendar.get(Calendar.HOUR);
-                if (hour == 0) {
-                    hour = 12;
+            WeatherLoader.Weather weather = mWeatherLoader.poll();
+            if (weather != null) {
+                mWeather = weather;
+                applyWeather();
+                if (!mLoggedFirstWeather && weather.high != null) {
+                    mLoggedFirstWeather = true;
+                    Log.d(TAG, "First weather frame " + (SystemClock.elapsedRealtime()
+                            - mCreatedRealtime) + " ms after onCreate, from "
+                            + (weather.restored ? "the stored forecast" : "the phone"));
                 }
-                timeText = String.format("%d:%02d", hour, minute);
             }
 
-            String secondsText = String.format("%02d", second);
-            String amPmText = Utils.getAmPmString(getResources(), am_pm);
-            float timeTextLen = mTextTimePaint.measureText(timeText);
-            float xOffsetTime = timeTextLen / 2;
-            if (mAmbient) {
-                if (!is24Hour) {
-                    xOffsetTime = xOffsetTime + (mTextTimeSecondsPaint.measureText(amPmText) / 2);
-                }
-            } else {
-                xOffsetTime = xOffsetTime + (mTextTimeSecondsPaint.measureText(secondsText) / 2);
+            // Move on to the next day of the forecast at midnight, without asking the phone
+            int julianDay = mRenderer.getJulianDay(now);
+            if (mWeather != null && mWeather.julianDay != julianDay
+                    && mRequestedJulianDay != julianDay) {
+                mRequestedJulianDay = julianDay;
+                mWeatherLoader.loadDay(julianDay);
             }
-            float xOffsetTimeFromCenter = bounds.centerX() - xOffsetTime;
-            canvas.drawText(timeText, xOffsetTimeFromCenter, mTimeYOffset, mTextTimePaint);
-            if (mAmbient) {
-                if (!is24Hour) {
-                    canvas.drawText(amPmText, xOffsetTimeFromCenter + timeTextLen + 5, mTimeYOffset, mTextTimeSecondsPaint);
-                }
-            } else {
-                canvas.drawText(secondsText, xOffsetTimeFromCenter + timeTextLen + 5, mTimeYOffset, mTextTimeSecondsPaint);
-            }
-
-            Paint datePaint = mAmbient ? mTextDateAmbientPaint : mTextDatePaint;
 
-            Resources resources = getResources();
-
-            String dayOfWeekString   = Utils.getDayOfWeekString(resources, mCalendar.get(Calendar.DAY_OF_WEEK));
-            String monthOfYearString = Utils.getMonthOfYearString(resources, mCalendar.get(Calendar.MONTH));
-
-            int dayOfMonth = mCalendar.get(Calendar.DAY_OF_MONTH);
-            int year = mCalendar.get(Calendar.YEAR);
-
-            String dateText = String.format("%s, %s %d %d", dayOfWeekString, monthOfYearString, dayOfMonth, year);
-            float xOffsetDate = datePaint.measureText(dateText) / 2;
-            canvas.drawText(dateText, bounds.centerX() - xOffsetDate, mDateYOffset, datePaint);
-
-            if (mWeatherHigh != null && mWeatherLow != null && mWeatherIcon != null) {
-                canvas.drawLine(bounds.centerX() - 20, mDividerYOffset, bounds.centerX() + 20, mDividerYOffset, datePaint);
-
-                float highTextLen = mTextTempHighPaint.measureText(mWeatherHigh);
-
-                if (mAmbient) {
-                    float lowTextLen = mTextTempLowAmbientPaint.measureText(mWeatherLow);
-                    float xOffset = bounds.centerX() - ((highTextLen + lowTextLen + 20) / 2);
-                    canvas.drawText(mWeatherHigh, xOffset, mWeatherYOffset, mTextTempHighPaint);
-                    canvas.drawText(mWeatherLow, xOffset + highTextLen + 20, mWeatherYOffset, mTextTempLowAmbientPaint);
-                } else {
-                    float xOffset = bounds.centerX() - (highTextLen / 2);
-                    canvas.drawText(mWeatherHigh, xOffset, mWeatherYOffset, mTextTempHighPaint);
-                    canvas.drawText(mWeatherLow, bounds.centerX() + (highTextLen / 2) + 20, mWeatherYOffset, mTextTempLowPaint);
-                    float iconXOffset = bounds.centerX() - ((highTextLen / 2) + mWeatherIcon.getWidth() + 30);
-                    canvas.drawBitmap(mWeatherIcon, iconXOffset, mWeatherYOffset - mWeatherIcon.getHeight(), null);
-                }
-            }
+            long start = SystemClock.elapsedRealtimeNanos();
+            mRenderer.draw(canvas, bounds, now);
+            mFrameStats.recordDraw(SystemClock.elapsedRealtimeNanos() - start);
         }
 
         private void updateTimer() {
@@ -373,11 +292,16 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         }
 
         private void handleUpdateTimeMessage() {
-            invalidate();
+            long timeMs = System.currentTimeMillis();
+            // A tick that wakes up a little early would draw the same second again
+            if (mRenderer.needsRedraw(timeMs)) {
+                invalidate();
+            } else {
+                mFrameStats.recordSkip();
+            }
             if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                long rateMs = mMute ? MUTE_UPDATE_RATE_MS : INTERACTIVE_UPDATE_RATE_MS;
+                long delayMs = rateMs - (timeMs % rateMs);
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
@@ -386,9 +310,33 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onConnected(Bundle bundle) {
             Log.d(TAG, "onConnected");
             Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
+            reconcile();
                 trigger();
         }
 
+        /**
+         * Loads the forecast the data layer already has, which may be newer than the stored one
+         * if it changed while the face wasn't listening.
+         */
+        private void reconcile() {
+            Wearable.DataApi.getDataItems(mGoogleApiClient)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            long now = System.currentTimeMillis();
+                            for (DataItem dataItem : dataItems) {
+                                DataMap dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+                                if (WEATHER_PATH.equals(dataItem.getUri().getPath())
+                                        && dataMap.containsKey(KEY_FORECAST)) {
+                                    mWeatherLoader.load(dataMap.getByteArray(KEY_FORECAST),
+                                            mRenderer.getJulianDay(now));
+                                }
+                            }
+                            dataItems.release();
+                        }
+                    });
+        }
+
         @Override
         public void onConnectionSuspended(int i) {
             Log.d(TAG, "suspended");
@@ -403,40 +351,19 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     String path = dataEvent.getDataItem().getUri().getPath();
                     Log.d(TAG, path);
                     if (path.equals(WEATHER_PATH)) {
-                        if (dataMap.containsKey(KEY_HIGH)) {
-                            mWeatherHigh = dataMap.getString(KEY_HIGH);
-                            Log.d(TAG, "High = " + mWeatherHigh);
-                        } else {
-                            Log.d(TAG, "No Data Available High temp");
-                        }
-
-                        if (dataMap.containsKey(KEY_LOW)) {
-                            mWeatherLow = dataMap.getString(KEY_LOW);
-                            Log.d(TAG, "Low = " + mWeatherLow);
-                        } else {
-                            Log.d(TAG, "No Data Available Low temp");
-                        }
-
-                        if (dataMap.containsKey(KEY_WEATHER_ID)) {
-                            int weatherId = dataMap.getInt(KEY_WEATHER_ID);
-                            Drawable b = getResources().getDrawable(Utils.getIconResourceForWeatherCondition(weatherId));
-                            Bitmap icon = null;
-                            if (((BitmapDrawable) b) != null) {
-                                icon = ((BitmapDrawable) b).getBitmap();
-                            }
-                            float scaledWidth = (mTextTempHighPaint.getTextSize() / icon.getHeight()) * icon.getWidth();
-                            mWeatherIcon = Bitmap.createScaledBitmap(icon, (int) scaledWidth, (int) mTextTempHighPaint.getTextSize(), true);
-
-                        } else {
-                            Log.d(TAG, "No Data Available Weather ID ");
-                        }
-
-                        invalidate();
+                        // Decoded off the UI thread; onDraw picks up the result
+                        long now = System.currentTimeMillis();
+                        mWeatherLoader.load(dataMap.getByteArray(KEY_FORECAST),
+                                mRenderer.getJulianDay(now));
                     }
                 }
             }
         }
 
+        private void applyWeather() {
+            mRenderer.setWeather(mWeather.high, mWeather.low, mWeather.getIcon(mIsRound));
+        }
+
         @Override
         public void onConnectionFailed(ConnectionResult connectionResult) {
             Log.d(TAG, "onConnection failed");
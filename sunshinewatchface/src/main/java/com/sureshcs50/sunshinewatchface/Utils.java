@@ -1,8 +1,12 @@
 package com.sureshcs50.sunshinewatchface;
 
 import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.common.WeatherConditions;
+
 import java.util.Calendar;
 
 /**
@@ -11,31 +15,60 @@ import java.util.Calendar;
 
 public class Utils {
 
+    // Icons indexed by WeatherConditions condition; -1 where there is none
+    private static final int[] CONDITION_ICONS = {
+            -1,
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_storm,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+
     public static int getIconResourceForWeatherCondition(int weatherId) {
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
+        return CONDITION_ICONS[WeatherConditions.getCondition(weatherId)];
+    }
+
+    /**
+     * Formats a temperature from {@link com.example.android.sunshine.common.WearForecast#getHigh}
+     * or getLow, already converted to the user's units and rounded as the phone rounds.
+     */
+    public static String formatTemperature(Resources resources, int degrees) {
+        return resources.getString(R.string.format_temperature, degrees);
+    }
+
+    /**
+     * Decodes an icon scaled to the given height, sampling while decoding so the full size
+     * image is never held in memory.
+     */
+    public static Bitmap decodeIcon(Resources resources, int resId, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        if (options.outHeight <= 0 || height <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outHeight / (options.inSampleSize * 2) >= height) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap sampled = BitmapFactory.decodeResource(resources, resId, options);
+        if (sampled == null || sampled.getHeight() == height) {
+            return sampled;
+        }
+        int width = Math.max(1, Math.round((float) height / sampled.getHeight() * sampled.getWidth()));
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, width, height, true);
+        if (scaled != sampled) {
+            sampled.recycle();
         }
-        return -1;
+        return scaled;
     }
 
     @NonNull
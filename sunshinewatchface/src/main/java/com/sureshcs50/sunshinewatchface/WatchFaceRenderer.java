@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sureshcs50.sunshinewatchface;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import com.example.android.sunshine.common.WearForecast;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the watch face: the time, the date and today's weather.
+ *
+ * {@link #draw} runs every frame, so it allocates nothing.  The time is worked out from the
+ * UTC offset and written into char buffers, and its widths are kept until the layout changes
+ * (insets, ambient mode) or the text does.
+ *
+ * The date line and the weather row (divider, icon, high and low) change a few times a day, so
+ * each is drawn into an offscreen layer that a frame just blits.  The date layer is redrawn when
+ * the day changes, the weather layer when the weather does, and both on insets and ambient mode
+ * changes.  Layers keep their bitmaps while their size stays the same.
+ *
+ * {@link #needsRedraw(long)} tells the engine whether a frame would look any different from
+ * the last one drawn, so ticks that change nothing can be skipped.
+ */
+final class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    private static final Typeface BOLD_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final long DAY_IN_MILLIS = SECONDS_PER_DAY * 1000L;
+
+    private final Resources mResources;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTextTimePaint;
+    private final Paint mTextTimeSecondsPaint;
+    private final Paint mTextDatePaint;
+    private final Paint mTextDateAmbientPaint;
+    private final Paint mTextTempHighPaint;
+    private final Paint mTextTempLowPaint;
+    private final Paint mTextTempLowAmbientPaint;
+
+    private final float mTimeYOffset;
+    private float mDateYOffset;
+    private float mDividerYOffset;
+    private float mWeatherYOffset;
+
+    private boolean mAmbient;
+    private boolean m24Hour;
+    private boolean mShowSeconds = true;
+
+    // Set by anything that changes the face other than the time passing
+    private boolean mDirty = true;
+    // The second of the day and Julian day last drawn
+    private int mDrawnSecondOfDay = -1;
+    private int mDrawnJulianDay = -1;
+
+    private TimeZone mTimeZone = TimeZone.getDefault();
+    private final Calendar mCalendar = Calendar.getInstance();
+
+    // "h:mm" or "HH:mm", and the minute of the day it was written for
+    private final char[] mTime = new char[5];
+    private int mTimeLength;
+    private int mTimeMinute = -1;
+    private float mTimeWidth = -1;
+
+    private final char[] mSeconds = new char[2];
+    // Widths of "00" to "59", measured as they are first drawn
+    private final float[] mSecondsWidths = new float[60];
+
+    private final String mAm;
+    private final String mPm;
+    private float mAmWidth = -1;
+    private float mPmWidth = -1;
+
+    private int mDateJulianDay = -1;
+    private String mDateText;
+
+    private String mWeatherHigh;
+    private String mWeatherLow;
+    private Bitmap mWeatherIcon;
+
+    private final Layer mDateLayer = new Layer();
+    private final Layer mWeatherLayer = new Layer();
+
+    WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+        mTimeYOffset = resources.getDimension(R.dimen.digital_time_y_offset);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.digital_background));
+
+        mTextTimePaint = createTextPaint(Color.WHITE, NORMAL_TYPEFACE);
+        mTextTimeSecondsPaint = createTextPaint(Color.WHITE, NORMAL_TYPEFACE);
+        mTextDatePaint = createTextPaint(resources.getColor(R.color.primary_light), NORMAL_TYPEFACE);
+        mTextDateAmbientPaint = createTextPaint(Color.WHITE, NORMAL_TYPEFACE);
+        mTextTempHighPaint = createTextPaint(Color.WHITE, BOLD_TYPEFACE);
+        mTextTempLowPaint = createTextPaint(resources.getColor(R.color.primary_light), NORMAL_TYPEFACE);
+        mTextTempLowAmbientPaint = createTextPaint(Color.WHITE, NORMAL_TYPEFACE);
+
+        mAm = Utils.getAmPmString(resources, Calendar.AM);
+        mPm = Utils.getAmPmString(resources, Calendar.PM);
+        invalidateWidths();
+    }
+
+    private static Paint createTextPaint(int textColor, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Loads the resources that have alternate values for round watches.
+     */
+    void applyInsets(boolean isRound) {
+        mDirty = true;
+        mDateLayer.valid = false;
+        mWeatherLayer.valid = false;
+        Resources resources = mResources;
+        mDateYOffset = resources.getDimension(isRound
+                ? R.dimen.digital_date_y_offset_round : R.dimen.digital_date_y_offset);
+        mDividerYOffset = resources.getDimension(isRound
+                ? R.dimen.digital_divider_y_offset_round : R.dimen.digital_divider_y_offset);
+        mWeatherYOffset = resources.getDimension(isRound
+                ? R.dimen.digital_weather_y_offset_round : R.dimen.digital_weather_y_offset);
+
+        float timeTextSize = resources.getDimension(isRound
+                ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size);
+        float dateTextSize = resources.getDimension(isRound
+                ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size);
+        float tempTextSize = resources.getDimension(isRound
+                ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
+
+        mTextTimePaint.setTextSize(timeTextSize);
+        mTextTimeSecondsPaint.setTextSize((float) (tempTextSize * 0.80));
+        mTextDatePaint.setTextSize(dateTextSize);
+        mTextDateAmbientPaint.setTextSize(dateTextSize);
+        mTextTempHighPaint.setTextSize(tempTextSize);
+        mTextTempLowAmbientPaint.setTextSize(tempTextSize);
+        mTextTempLowPaint.setTextSize(tempTextSize);
+        invalidateWidths();
+    }
+
+    /**
+     * @param lowBitAmbient whether text is drawn without anti-aliasing in ambient mode
+     */
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        mAmbient = ambient;
+        mDirty = true;
+        mDateLayer.valid = false;
+        mWeatherLayer.valid = false;
+        if (lowBitAmbient) {
+            mTextTimePaint.setAntiAlias(!ambient);
+            mTextDatePaint.setAntiAlias(!ambient);
+            mTextDateAmbientPaint.setAntiAlias(!ambient);
+            mTextTempHighPaint.setAntiAlias(!ambient);
+            mTextTempLowAmbientPaint.setAntiAlias(!ambient);
+            mTextTempLowPaint.setAntiAlias(!ambient);
+            invalidateWidths();
+        }
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mCalendar.setTimeZone(timeZone);
+        mDirty = true;
+        mTimeMinute = -1;
+        mDateJulianDay = -1;
+    }
+
+    void set24HourFormat(boolean is24Hour) {
+        if (m24Hour != is24Hour) {
+            m24Hour = is24Hour;
+            mTimeMinute = -1;
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Sets whether seconds are drawn outside ambient mode; they are hidden in mute mode.
+     */
+    void setShowSeconds(boolean showSeconds) {
+        if (mShowSeconds != showSeconds) {
+            mShowSeconds = showSeconds;
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Sets the weather to draw; nothing is drawn unless all three are set.
+     */
+    void setWeather(String high, String low, Bitmap icon) {
+        mWeatherHigh = high;
+        mWeatherLow = low;
+        mWeatherIcon = icon;
+        mWeatherLayer.valid = false;
+        mDirty = true;
+    }
+
+    /**
+     * @return the local Julian day of the given instant in the watch's timezone.
+     */
+    int getJulianDay(long now) {
+        return WearForecast.julianDay(now, mTimeZone.getOffset(now));
+    }
+
+    /**
+     * @return true if a frame drawn at now would differ from the last frame drawn: something
+     * was set since, or the day, or the second or minute shown, has changed.  Allocates nothing.
+     */
+    boolean needsRedraw(long now) {
+        if (mDirty) {
+            return true;
+        }
+        long offset = mTimeZone.getOffset(now);
+        if (WearForecast.julianDay(now, offset) != mDrawnJulianDay) {
+            return true;
+        }
+        int secondOfDay = secondOfDay(now + offset);
+        if (mShowSeconds && !mAmbient) {
+            return secondOfDay != mDrawnSecondOfDay;
+        }
+        return secondOfDay / 60 != mDrawnSecondOfDay / 60;
+    }
+
+    private static int secondOfDay(long localMillis) {
+        return (int) ((localMillis % DAY_IN_MILLIS + DAY_IN_MILLIS) % DAY_IN_MILLIS / 1000);
+    }
+
+    private void invalidateWidths() {
+        mTimeWidth = -1;
+        Arrays.fill(mSecondsWidths, -1);
+        mAmWidth = -1;
+        mPmWidth = -1;
+    }
+
+    void draw(Canvas canvas, Rect bounds, long now) {
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+        } else {
+            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+        }
+
+        long offset = mTimeZone.getOffset(now);
+        int julianDay = WearForecast.julianDay(now, offset);
+        if (julianDay != mDateJulianDay) {
+            updateDate(now, julianDay);
+        }
+        int secondOfDay = secondOfDay(now + offset);
+        mDirty = false;
+        mDrawnJulianDay = julianDay;
+        mDrawnSecondOfDay = secondOfDay;
+        int minuteOfDay = secondOfDay / 60;
+        int second = secondOfDay % 60;
+        if (minuteOfDay != mTimeMinute) {
+            updateTime(minuteOfDay);
+        }
+        if (mTimeWidth < 0) {
+            mTimeWidth = mTextTimePaint.measureText(mTime, 0, mTimeLength);
+        }
+
+        boolean pm = minuteOfDay >= 12 * 60;
+        float xOffsetTime = mTimeWidth / 2;
+        float secondsWidth = 0;
+        if (mAmbient) {
+            if (!m24Hour) {
+                xOffsetTime = xOffsetTime + (getAmPmWidth(pm) / 2);
+            }
+        } else if (mShowSeconds) {
+            mSeconds[0] = (char) ('0' + second / 10);
+            mSeconds[1] = (char) ('0' + second % 10);
+            secondsWidth = mSecondsWidths[second];
+            if (secondsWidth < 0) {
+                secondsWidth = mTextTimeSecondsPaint.measureText(mSeconds, 0, 2);
+                mSecondsWidths[second] = secondsWidth;
+            }
+            xOffsetTime = xOffsetTime + (secondsWidth / 2);
+        }
+        float xOffsetTimeFromCenter = bounds.centerX() - xOffsetTime;
+        canvas.drawText(mTime, 0, mTimeLength, xOffsetTimeFromCenter, mTimeYOffset, mTextTimePaint);
+        if (mAmbient) {
+            if (!m24Hour) {
+                canvas.drawText(pm ? mPm : mAm, xOffsetTimeFromCenter + mTimeWidth + 5,
+                        mTimeYOffset, mTextTimeSecondsPaint);
+            }
+        } else if (mShowSeconds) {
+            canvas.drawText(mSeconds, 0, 2, xOffsetTimeFromCenter + mTimeWidth + 5,
+                    mTimeYOffset, mTextTimeSecondsPaint);
+        }
+
+        int width = bounds.width();
+        if (!mDateLayer.valid || mDateLayer.width() != width) {
+            renderDateLayer(width);
+        }
+        mDateLayer.draw(canvas, bounds.left);
+
+        if (mWeatherHigh != null && mWeatherLow != null && mWeatherIcon != null) {
+            if (!mWeatherLayer.valid || mWeatherLayer.width() != width) {
+                renderWeatherLayer(width);
+            }
+            mWeatherLayer.draw(canvas, bounds.left);
+        }
+    }
+
+    private void renderDateLayer(int width) {
+        Paint datePaint = mAmbient ? mTextDateAmbientPaint : mTextDatePaint;
+        Canvas canvas = mDateLayer.begin(width, mDateYOffset + datePaint.ascent(),
+                mDateYOffset + datePaint.descent());
+        float dateWidth = datePaint.measureText(mDateText);
+        canvas.drawText(mDateText, width / 2f - dateWidth / 2, mDateLayer.y(mDateYOffset),
+                datePaint);
+    }
+
+    private void renderWeatherLayer(int width) {
+        Paint datePaint = mAmbient ? mTextDateAmbientPaint : mTextDatePaint;
+        // The same size in and out of ambient mode, so switching modes reuses the bitmap
+        float top = Math.min(mDividerYOffset - 1, mWeatherYOffset
+                - Math.max(mWeatherIcon.getHeight(), -mTextTempHighPaint.ascent()));
+        float bottom = mWeatherYOffset + mTextTempHighPaint.descent();
+        Canvas canvas = mWeatherLayer.begin(width, top, bottom);
+        float centerX = width / 2f;
+        float weatherY = mWeatherLayer.y(mWeatherYOffset);
+
+        float dividerY = mWeatherLayer.y(mDividerYOffset);
+        canvas.drawLine(centerX - 20, dividerY, centerX + 20, dividerY, datePaint);
+
+        float highTextLen = mTextTempHighPaint.measureText(mWeatherHigh);
+        if (mAmbient) {
+            float lowTextLen = mTextTempLowAmbientPaint.measureText(mWeatherLow);
+            float xOffset = centerX - ((highTextLen + lowTextLen + 20) / 2);
+            canvas.drawText(mWeatherHigh, xOffset, weatherY, mTextTempHighPaint);
+            canvas.drawText(mWeatherLow, xOffset + highTextLen + 20, weatherY,
+                    mTextTempLowAmbientPaint);
+        } else {
+            float xOffset = centerX - (highTextLen / 2);
+            canvas.drawText(mWeatherHigh, xOffset, weatherY, mTextTempHighPaint);
+            canvas.drawText(mWeatherLow, centerX + (highTextLen / 2) + 20, weatherY,
+                    mTextTempLowPaint);
+            float iconXOffset = centerX - ((highTextLen / 2) + mWeatherIcon.getWidth() + 30);
+            canvas.drawBitmap(mWeatherIcon, iconXOffset, weatherY - mWeatherIcon.getHeight(),
+                    null);
+        }
+    }
+
+    private float getAmPmWidth(boolean pm) {
+        if (pm) {
+            if (mPmWidth < 0) {
+                mPmWidth = mTextTimeSecondsPaint.measureText(mPm);
+            }
+            return mPmWidth;
+        }
+        if (mAmWidth < 0) {
+            mAmWidth = mTextTimeSecondsPaint.measureText(mAm);
+        }
+        return mAmWidth;
+    }
+
+    // Writes the time into mTime, as "HH:mm" or "h:mm"
+    private void updateTime(int minuteOfDay) {
+        int hour = minuteOfDay / 60;
+        int minute = minuteOfDay % 60;
+        int length = 0;
+        if (m24Hour) {
+            mTime[length++] = (char) ('0' + hour / 10);
+        } else {
+            hour %= 12;
+            if (hour == 0) {
+                hour = 12;
+            }
+            if (hour >= 10) {
+                mTime[length++] = '1';
+            }
+        }
+        mTime[length++] = (char) ('0' + hour % 10);
+        mTime[length++] = ':';
+        mTime[length++] = (char) ('0' + minute / 10);
+        mTime[length++] = (char) ('0' + minute % 10);
+        mTimeLength = length;
+        mTimeMinute = minuteOfDay;
+        mTimeWidth = -1;
+    }
+
+    // Once a day, so this may allocate
+    private void updateDate(long now, int julianDay) {
+        mCalendar.setTimeInMillis(now);
+        String dayOfWeek = Utils.getDayOfWeekString(mResources,
+                mCalendar.get(Calendar.DAY_OF_WEEK));
+        String monthOfYear = Utils.getMonthOfYearString(mResources,
+                mCalendar.get(Calendar.MONTH));
+        mDateText = String.format(Locale.getDefault(), "%s, %s %d %d", dayOfWeek, monthOfYear,
+                mCalendar.get(Calendar.DAY_OF_MONTH), mCalendar.get(Calendar.YEAR));
+        mDateJulianDay = julianDay;
+        mDateLayer.valid = false;
+    }
+
+    /**
+     * A full-width band of the face, drawn offscreen and blitted at its place.
+     */
+    private static final class Layer {
+        boolean valid;
+
+        private Bitmap mBitmap;
+        private Canvas mCanvas;
+        private int mTop;
+
+        int width() {
+            return mBitmap == null ? 0 : mBitmap.getWidth();
+        }
+
+        /**
+         * @return y in layer coordinates for a y on the face.
+         */
+        float y(float faceY) {
+            return faceY - mTop;
+        }
+
+        /**
+         * Clears the layer to cover [top, bottom) on the face and returns a canvas to draw it
+         * with, in layer coordinates.  The bitmap is only replaced when the size changes.
+         */
+        Canvas begin(int width, float top, float bottom) {
+            mTop = (int) Math.floor(top);
+            int height = Math.max(1, (int) Math.ceil(bottom) - mTop);
+            if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+                if (mBitmap != null) {
+                    mBitmap.recycle();
+                }
+                mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mCanvas = new Canvas(mBitmap);
+            } else {
+                mBitmap.eraseColor(Color.TRANSPARENT);
+            }
+            valid = true;
+            return mCanvas;
+        }
+
+        void draw(Canvas canvas, int left) {
+            canvas.drawBitmap(mBitmap, left, mTop, null);
+        }
+    }
+}
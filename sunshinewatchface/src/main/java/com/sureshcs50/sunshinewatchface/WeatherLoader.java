@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sureshcs50.sunshinewatchface;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.common.WearForecast;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns forecasts from the phone into what the watch face draws, on a background thread.
+ *
+ * Decoding the payload, formatting the temperatures and decoding and scaling the icon all
+ * happen off the engine's UI thread.  Each result is published as an immutable {@link Weather}
+ * that the engine swaps out with {@link #poll()} when it next draws.  The icon is scaled for
+ * the temperature text size of both square and round layouts, so an insets change never waits
+ * on a rescale.
+ *
+ * The last forecast that decoded is kept in a file, so {@link #restore(int)} can show weather
+ * as soon as the face is created, before the data layer has connected.
+ */
+final class WeatherLoader {
+    private static final String TAG = WeatherLoader.class.getSimpleName();
+
+    /**
+     * The weather for one day, ready to draw.
+     */
+    static final class Weather {
+        final int julianDay;
+        // True if it came from the stored forecast rather than the phone
+        final boolean restored;
+        // Null if the forecast doesn't cover the day
+        final String high;
+        final String low;
+        private final Bitmap mSquareIcon;
+        private final Bitmap mRoundIcon;
+
+        Weather(int julianDay, boolean restored, String high, String low, Bitmap squareIcon,
+                Bitmap roundIcon) {
+            this.julianDay = julianDay;
+            this.restored = restored;
+            this.high = high;
+            this.low = low;
+            mSquareIcon = squareIcon;
+            mRoundIcon = roundIcon;
+        }
+
+        Bitmap getIcon(boolean isRound) {
+            return isRound ? mRoundIcon : mSquareIcon;
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called on the loader's thread when {@link #poll()} has a new result.
+         */
+        void onWeatherLoaded();
+    }
+
+    private static final String STORE_NAME = "forecast";
+
+    private final Resources mResources;
+    private final AtomicFile mStore;
+    private final Listener mListener;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final AtomicReference<Weather> mLoaded = new AtomicReference<>();
+
+    // Only touched on the loader's thread
+    private final WearForecast mForecast = new WearForecast();
+    private boolean mHasForecast;
+    private boolean mRestored;
+    // What the store holds, so an unchanged forecast isn't written again
+    private byte[] mStoredPayload;
+    private int mIconResId = -1;
+    private Bitmap mSquareIcon;
+    private Bitmap mRoundIcon;
+
+    WeatherLoader(Context context, Listener listener) {
+        mResources = context.getResources();
+        mStore = new AtomicFile(new File(context.getFilesDir(), STORE_NAME));
+        mListener = listener;
+        mThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Loads the weather for the given day from the stored forecast, if there is one.
+     */
+    void restore(final int julianDay) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                byte[] payload = readStore();
+                if (payload == null || !mForecast.decode(payload)) {
+                    return;
+                }
+                mStoredPayload = payload;
+                mHasForecast = true;
+                mRestored = true;
+                loadDayNow(julianDay);
+            }
+        });
+    }
+
+    /**
+     * Decodes a forecast from the phone, stores it, and loads the weather for the given day
+     * from it.
+     */
+    void load(final byte[] payload, final int julianDay) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Connecting reads back the item we already have; nothing to do for it
+                if (mHasForecast && Arrays.equals(payload, mStoredPayload)) {
+                    return;
+                }
+                if (!mForecast.decode(payload)) {
+                    Log.d(TAG, "No forecast we can read");
+                    return;
+                }
+                mHasForecast = true;
+                mRestored = false;
+                loadDayNow(julianDay);
+                writeStore(payload);
+            }
+        });
+    }
+
+    /**
+     * Loads the weather for another day from the last forecast, as when midnight passes.
+     */
+    void loadDay(final int julianDay) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mHasForecast) {
+                    loadDayNow(julianDay);
+                }
+            }
+        });
+    }
+
+    // On the loader's thread
+    private void loadDayNow(int julianDay) {
+        int day = mForecast.indexOfDay(julianDay);
+        if (day == -1) {
+            Log.d(TAG, "No forecast for today");
+            publish(new Weather(julianDay, mRestored, null, null, null, null));
+            return;
+        }
+
+        String high = Utils.formatTemperature(mResources, mForecast.getHigh(day));
+        String low = Utils.formatTemperature(mResources, mForecast.getLow(day));
+        Log.d(TAG, "High = " + high + ", Low = " + low);
+
+        int iconResId = Utils.getIconResourceForWeatherCondition(mForecast.getWeatherId(day));
+        // Most updates keep the condition; only decode when the icon changes
+        if (iconResId != mIconResId) {
+            mIconResId = iconResId;
+            mSquareIcon = decodeIcon(iconResId, R.dimen.digital_temp_text_size);
+            int roundHeight = (int) mResources.getDimension(R.dimen.digital_temp_text_size_round);
+            mRoundIcon = mSquareIcon != null && mSquareIcon.getHeight() == roundHeight
+                    ? mSquareIcon : decodeIcon(iconResId, R.dimen.digital_temp_text_size_round);
+        }
+        publish(new Weather(julianDay, mRestored, high, low, mSquareIcon, mRoundIcon));
+    }
+
+    // The icon is drawn as tall as the temperatures next to it
+    private Bitmap decodeIcon(int iconResId, int textSizeDimen) {
+        if (iconResId == -1) {
+            return null;
+        }
+        return Utils.decodeIcon(mResources, iconResId,
+                (int) mResources.getDimension(textSizeDimen));
+    }
+
+    private byte[] readStore() {
+        try {
+            return mStore.readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read the stored forecast", e);
+            return null;
+        }
+    }
+
+    private void writeStore(byte[] payload) {
+        FileOutputStream out = null;
+        try {
+            out = mStore.startWrite();
+            out.write(payload);
+            mStore.finishWrite(out);
+            mStoredPayload = payload;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't store the forecast", e);
+            if (out != null) {
+                mStore.failWrite(out);
+            }
+        }
+    }
+
+    private void publish(Weather weather) {
+        mLoaded.set(weather);
+        mListener.onWeatherLoaded();
+    }
+
+    /**
+     * @return the weather loaded since the last call, or null.  Allocates nothing, so it can be
+     * called every frame.
+     */
+    Weather poll() {
+        return mLoaded.getAndSet(null);
+    }
+
+    void quit() {
+        mThread.quitSafely();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sureshcs50.sunshinewatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.Assert.fail;
+
+/*
+    Times the watch face's frames on the JVM, in every shape and mode the engine can put the
+    renderer in, and counts the bytes each frame allocates.
+
+    The renderer is set up through the same calls the engine makes (insets, ambient mode,
+    weather), then draws into a canvas that discards what it is given.  Robolectric's canvas
+    does no rasterizing either, but it keeps a log of every call, and building that log would
+    swamp the renderer's own time and allocations.  So the numbers are the renderer's work
+    alone, for comparing runs of this harness, not device frame times: the device's own
+    numbers come from FrameStats.  A renderer that doesn't allocate reports 0 bytes per frame,
+    and against such a baseline any allocation fails the comparison below.
+
+    Each run writes its numbers to the renderBenchmark.report file.  Given the report of an
+    earlier run as -PrenderBaseline, the test fails if a median frame time grows by more than
+    -PrenderTimeTolerance (default 25%) or the bytes per frame by more than
+    -PrenderAllocTolerance (default 10%).
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TestRenderBenchmark {
+
+    private static final int SIZE = 320;
+    private static final int ICON_SIZE = 48;
+    private static final int WARMUP_FRAMES = 200;
+    private static final int FRAMES = 1000;
+
+    private static final String MEDIAN_NANOS = ".medianNanos";
+    private static final String BYTES_PER_FRAME = ".bytesPerFrame";
+
+    private enum Mode {
+        INTERACTIVE, AMBIENT, LOW_BIT_AMBIENT
+    }
+
+    // Takes every call the renderer makes on the frame's canvas and does nothing with it
+    private static class DiscardingCanvas extends Canvas {
+        DiscardingCanvas(Bitmap bitmap) {
+            super(bitmap);
+        }
+
+        @Override
+        public void drawColor(int color) {
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        }
+
+        @Override
+        public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, Paint paint) {
+        }
+
+        @Override
+        public void drawText(String text, int start, int end, float x, float y, Paint paint) {
+        }
+
+        @Override
+        public void drawText(CharSequence text, int start, int end, float x, float y,
+                             Paint paint) {
+        }
+    }
+
+    @Test
+    public void testFrameCost() throws IOException {
+        Properties results = new Properties();
+        for (boolean isRound : new boolean[] {false, true}) {
+            for (Mode mode : Mode.values()) {
+                measure(isRound, mode, results);
+            }
+        }
+
+        String report = System.getProperty("renderBenchmark.report");
+        if (report != null && !report.isEmpty()) {
+            File file = new File(report);
+            file.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                results.store(out, "Watch face render benchmark");
+            } finally {
+                out.close();
+            }
+        }
+
+        String baseline = System.getProperty("renderBenchmark.baseline");
+        if (baseline != null && !baseline.isEmpty()) {
+            compareToBaseline(results, new File(baseline));
+        }
+    }
+
+    private static void measure(boolean isRound, Mode mode, Properties results) {
+        String name = (isRound ? "round" : "square") + "." + mode.name().toLowerCase(Locale.US);
+
+        WatchFaceRenderer renderer =
+                new WatchFaceRenderer(RuntimeEnvironment.application.getResources());
+        renderer.applyInsets(isRound);
+        renderer.setAmbient(mode != Mode.INTERACTIVE, mode == Mode.LOW_BIT_AMBIENT);
+        renderer.setWeather("21°", "12°",
+                Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888));
+        Canvas canvas = new DiscardingCanvas(
+                Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+
+        // Frames come as often as the engine's timer would ask for them, from ten in the morning
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 10);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long now = calendar.getTimeInMillis();
+        long step = mode == Mode.INTERACTIVE ? 1000 : 60 * 1000;
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            renderer.draw(canvas, bounds, now);
+            now += step;
+        }
+
+        long[] nanos = new long[FRAMES];
+        long bytesBefore = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++) {
+            long start = System.nanoTime();
+            renderer.draw(canvas, bounds, now);
+            nanos[i] = System.nanoTime() - start;
+            now += step;
+        }
+        long bytesAfter = allocatedBytes();
+
+        Arrays.sort(nanos);
+        long medianNanos = nanos[FRAMES / 2];
+        results.setProperty(name + MEDIAN_NANOS, Long.toString(medianNanos));
+        if (bytesBefore >= 0 && bytesAfter >= 0) {
+            // Rounded up, so that an allocation made only every few frames still shows
+            results.setProperty(name + BYTES_PER_FRAME,
+                    Long.toString((bytesAfter - bytesBefore + FRAMES - 1) / FRAMES));
+        }
+    }
+
+    /**
+     * @return bytes allocated by this thread so far, or -1 if the JVM can't say.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static void compareToBaseline(Properties results, File file) throws IOException {
+        Properties baseline = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+
+        double timeTolerance = tolerance("renderBenchmark.timeTolerance");
+        double allocTolerance = tolerance("renderBenchmark.allocTolerance");
+        StringBuilder regressions = new StringBuilder();
+        for (String key : results.stringPropertyNames()) {
+            String before = baseline.getProperty(key);
+            if (before == null) {
+                continue;
+            }
+            long was = Long.parseLong(before);
+            long is = Long.parseLong(results.getProperty(key));
+            double tolerance = key.endsWith(MEDIAN_NANOS) ? timeTolerance : allocTolerance;
+            if (is > was * (1 + tolerance)) {
+                regressions.append(String.format(Locale.US, "%n  %s: %d, was %d", key, is, was));
+            }
+        }
+        if (regressions.length() > 0) {
+            fail("Error: frames got more expensive than " + file + " allows:" + regressions);
+        }
+    }
+
+    private static double tolerance(String property) {
+        String value = System.getProperty(property);
+        return value == null || value.isEmpty() ? 0 : Double.parseDouble(value);
+    }
+}